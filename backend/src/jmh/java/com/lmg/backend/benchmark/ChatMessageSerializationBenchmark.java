@@ -0,0 +1,77 @@
+package com.lmg.backend.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.lmg.backend.chat.ChatMessage;
+import com.lmg.backend.chat.ChatMessageBinaryCodec;
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.MessageType;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding cost of one chat message, with an ObjectMapper configured the way Spring Boot builds it.
+ * - entityToJson: the ChatMessage entity, what broadcasts serialized before ChatMessageView
+ * - viewToJson: the compact view through a prepared writer, what ChatBroadcaster does once per broadcast
+ * - viewToBinary: the chat-v1 binary form sent to opted-in raw WebSocket sessions
+ * - jsonToEntity: an inbound SEND payload, as the @MessageMapping argument resolver reads it
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChatMessageSerializationBenchmark {
+
+    @Param({"32", "512"})
+    public int contentLength;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter viewWriter;
+    private ChatMessage message;
+    private ChatMessageView view;
+    private byte[] inbound;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        viewWriter = objectMapper.writerFor(ChatMessageView.class);
+
+        message = new ChatMessage();
+        message.setId(123_456L);
+        message.setRoom("public");
+        message.setSender("bench-user");
+        message.setContent("x".repeat(contentLength));
+        message.setType(MessageType.CHAT);
+        message.setSentAt(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+        view = ChatMessageView.from(message);
+        inbound = ("{\"content\":\"" + message.getContent() + "\",\"type\":\"CHAT\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] entityToJson() throws IOException {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] viewToJson() throws IOException {
+        return viewWriter.writeValueAsBytes(view);
+    }
+
+    @Benchmark
+    public byte[] viewToBinary() {
+        return ChatMessageBinaryCodec.encode(view);
+    }
+
+    @Benchmark
+    public ChatMessage jsonToEntity() throws IOException {
+        return objectMapper.readValue(inbound, ChatMessage.class);
+    }
+}
@@ -0,0 +1,122 @@
+package com.lmg.backend.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows/sec for the two ways Hibernate can insert messages.
+ * - identityPerRow: what GenerationType.IDENTITY forces, one INSERT per row and a
+ *   generated-key read-back after each one
+ * - sequenceBatched: pooled sequence IDs (one sequence call per 50 rows) and
+ *   JDBC batches of hibernate.jdbc.batch_size rows
+ * Both run against an in-memory H2 database so the numbers show the per-statement
+ * overhead only; a networked database widens the gap by one round trip per row.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InsertBatchingBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final int BATCH_SIZE = 50;
+
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:insert-bench;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE identity_messages (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                    + "content VARCHAR(255), sender VARCHAR(255), type VARCHAR(16), sent_at TIMESTAMP)");
+            statement.execute("CREATE TABLE sequence_messages (id BIGINT PRIMARY KEY, "
+                    + "content VARCHAR(255), sender VARCHAR(255), type VARCHAR(16), sent_at TIMESTAMP)");
+            statement.execute("CREATE SEQUENCE messages_seq START WITH 1 INCREMENT BY " + BATCH_SIZE);
+        }
+        connection.setAutoCommit(false);
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE TABLE identity_messages");
+            statement.execute("TRUNCATE TABLE sequence_messages");
+        }
+        connection.commit();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long identityPerRow() throws SQLException {
+        long lastId = 0;
+        for (int i = 0; i < ROWS; i++) {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO identity_messages (content, sender, type, sent_at) VALUES (?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                bindRow(insert, i);
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    lastId = keys.getLong(1);
+                }
+            }
+        }
+        connection.commit();
+        return lastId;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long sequenceBatched() throws SQLException {
+        long nextId = 0;
+        long hi = -1;
+        try (PreparedStatement nextBlock = connection.prepareStatement("VALUES NEXT VALUE FOR messages_seq");
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO sequence_messages (id, content, sender, type, sent_at) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                if (nextId > hi) {
+                    try (ResultSet rs = nextBlock.executeQuery()) {
+                        rs.next();
+                        hi = rs.getLong(1);
+                    }
+                    nextId = Math.max(1, hi - BATCH_SIZE + 1);
+                }
+                insert.setLong(1, nextId++);
+                bindRow(insert, i, 2);
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        return nextId;
+    }
+
+    private static void bindRow(PreparedStatement statement, int i) throws SQLException {
+        bindRow(statement, i, 1);
+    }
+
+    private static void bindRow(PreparedStatement statement, int i, int firstIndex) throws SQLException {
+        statement.setString(firstIndex, "benchmark message " + i);
+        statement.setString(firstIndex + 1, "bench-user");
+        statement.setString(firstIndex + 2, "CHAT");
+        statement.setTimestamp(firstIndex + 3, new Timestamp(System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,77 @@
+package com.lmg.backend.benchmark;
+
+import com.lmg.backend.config.AuthenticatedUser;
+import com.lmg.backend.config.JwtService;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the JWT work done on every login, CONNECT and authenticated request.
+ * - generate: signing a token with the user claims (login/register)
+ * - parseVerified: HMAC check and claims parsing, what a token costs the first time it is seen
+ * - parseCached: the same token seen again, answered from the claims cache
+ * - validate: parse plus the subject/expiry check, as JwtAuthenticationFilter does it
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JwtServiceBenchmark {
+
+    private static final String SECRET = "mySecretKeyForJWTTokenGenerationPleaseChangeThisInProductionToSomethingMoreSecure";
+    private static final AuthenticatedUser USER =
+            new AuthenticatedUser(42L, "bench@example.com", "bench-user", AuthenticatedUser.DEFAULT_ROLES);
+
+    private JwtService cachingService;
+    private JwtService nonCachingService;
+    private String token;
+    private String[] alternatingTokens;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cachingService = jwtService(10_000);
+        // A one-entry cache with two tokens taking turns never hits
+        nonCachingService = jwtService(1);
+        token = cachingService.generateToken(USER);
+        alternatingTokens = new String[]{token, cachingService.generateToken(
+                new AuthenticatedUser(43L, "other@example.com", "other-user", AuthenticatedUser.DEFAULT_ROLES))};
+    }
+
+    @Benchmark
+    public String generate() {
+        return cachingService.generateToken(USER);
+    }
+
+    @Benchmark
+    public Claims parseVerified() {
+        next ^= 1;
+        return nonCachingService.parseToken(alternatingTokens[next]);
+    }
+
+    @Benchmark
+    public Claims parseCached() {
+        return cachingService.parseToken(token);
+    }
+
+    @Benchmark
+    public Boolean validate() {
+        return cachingService.validateToken(token, USER.getEmail());
+    }
+
+    private static JwtService jwtService(int claimsCacheMaxSize) {
+        JwtService service = new JwtService();
+        ReflectionTestUtils.setField(service, "secretKey", SECRET);
+        ReflectionTestUtils.setField(service, "jwtExpiration", TimeUnit.DAYS.toMillis(1));
+        ReflectionTestUtils.setField(service, "claimsCacheMaxSize", claimsCacheMaxSize);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.invokeMethod(service, "init");
+        return service;
+    }
+}
@@ -0,0 +1,84 @@
+package com.lmg.backend.benchmark;
+
+import com.lmg.backend.BackendApplication;
+import com.lmg.backend.chat.ChatMessage;
+import com.lmg.backend.chat.ChatMessageRepository;
+import com.lmg.backend.chat.MessageType;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows/sec through ChatMessageRepository in the real application context (Hibernate, pooled sequence, H2).
+ * - saveEach: one save() per message, each in its own transaction
+ * - saveAllBatched: saveAll() of the whole set in one transaction, flushed as hibernate.jdbc.batch_size batches
+ * InsertBatchingBenchmark measures the same difference at the plain JDBC level.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageRepositoryBenchmark {
+
+    private static final int ROWS = 200;
+
+    private ConfigurableApplicationContext context;
+    private ChatMessageRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(BackendApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .run();
+        repository = context.getBean(ChatMessageRepository.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() {
+        repository.deleteAllInBatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long saveEach() {
+        long lastId = 0;
+        for (int i = 0; i < ROWS; i++) {
+            lastId = repository.save(message(i)).getId();
+        }
+        return lastId;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int saveAllBatched() {
+        List<ChatMessage> batch = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            batch.add(message(i));
+        }
+        return repository.saveAll(batch).size();
+    }
+
+    private static ChatMessage message(int i) {
+        ChatMessage message = new ChatMessage();
+        message.setRoom("public");
+        message.setSender("bench-user");
+        message.setContent("benchmark message " + i);
+        message.setType(MessageType.CHAT);
+        message.setSentAt(LocalDateTime.now());
+        return message;
+    }
+}
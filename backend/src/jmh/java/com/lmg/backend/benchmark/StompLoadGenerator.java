@@ -0,0 +1,354 @@
+package com.lmg.backend.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lmg.backend.config.AuthenticatedUser;
+import com.lmg.backend.config.JwtService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test for the STOMP endpoint of a running backend.
+ * Opens many sessions subscribed to /topic/public, publishes from a few of them at a fixed rate,
+ * and measures publish-to-receive latency over every delivery (each message is timed once per subscriber).
+ * Session setup runs on virtual threads on Java 21+, on a bounded platform pool otherwise.
+ * Tokens are signed locally with the server's jwt.secret, so no users need to exist (jwt.stateless=true).
+ * Run with:
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.lmg.backend.benchmark.StompLoadGenerator
+ *     -Dbenchmark.args="--sessions=2000 --rate=200 --duration=30"
+ * Options (defaults in brackets):
+ * --url [ws://localhost:8080/ws/websocket], --sessions [1000], --publishers [10], --rate [100] messages/sec in total,
+ * --warmup [5], --duration [30] and --drain [10] seconds, --connect-concurrency [200], --coalesce [false], --secret [jwt.secret default],
+ * --server-pid [none] to also report the server's heap per session, --metrics-url [/actuator/prometheus of the url's host]
+ * The heap is read from the Prometheus endpoint after a full GC triggered with "jcmd pid GC.run",
+ * so the server must run on the same machine as the generator.
+ */
+public final class StompLoadGenerator {
+
+    private static final String DEFAULT_SECRET =
+            "mySecretKeyForJWTTokenGenerationPleaseChangeThisInProductionToSomethingMoreSecure";
+
+    private final String url;
+    private final int sessionCount;
+    private final int publisherCount;
+    private final int rate;
+    private final long warmupSeconds;
+    private final long durationSeconds;
+    private final long drainSeconds;
+    private final int connectConcurrency;
+    private final String serverPid;
+    private final String metricsUrl;
+    private final boolean coalesce;
+    private final JwtService jwtService;
+
+    // Only this run's messages are timed, in case other clients are chatting on the same node
+    private final String marker = "lg:" + UUID.randomUUID().toString().substring(0, 8) + ":";
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder sentInWindow = new LongAdder();
+    private final AtomicInteger transportErrors = new AtomicInteger();
+    // Deliveries are measured for messages published inside [windowStart, windowEnd)
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd = Long.MAX_VALUE;
+
+    private StompLoadGenerator(Map<String, String> options) {
+        url = options.getOrDefault("url", "ws://localhost:8080/ws/websocket");
+        sessionCount = Integer.parseInt(options.getOrDefault("sessions", "1000"));
+        publisherCount = Math.min(sessionCount, Integer.parseInt(options.getOrDefault("publishers", "10")));
+        rate = Integer.parseInt(options.getOrDefault("rate", "100"));
+        warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        drainSeconds = Long.parseLong(options.getOrDefault("drain", "10"));
+        connectConcurrency = Integer.parseInt(options.getOrDefault("connect-concurrency", "200"));
+        coalesce = Boolean.parseBoolean(options.getOrDefault("coalesce", "false"));
+        serverPid = options.get("server-pid");
+        URI endpoint = URI.create(url);
+        metricsUrl = options.getOrDefault("metrics-url", (endpoint.getScheme().equals("wss") ? "https" : "http")
+                + "://" + endpoint.getAuthority() + "/actuator/prometheus");
+
+        jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", options.getOrDefault("secret", DEFAULT_SECRET));
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", TimeUnit.HOURS.toMillis(1));
+        ReflectionTestUtils.setField(jwtService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.invokeMethod(jwtService, "init");
+    }
+
+    public static void main(String[] args) throws Exception {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new StompLoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+        client.setMessageConverter(new CompositeMessageConverter(
+                List.of(new ByteArrayMessageConverter(), new MappingJackson2MessageConverter())));
+        client.setInboundMessageSizeLimit(1024 * 1024);
+        // Sends heartbeats, as browser clients do
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("load-stomp-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        client.setTaskScheduler(scheduler);
+
+        long heapBefore = serverPid == null ? 0 : serverHeapAfterGc();
+        boolean virtualThreads = Runtime.version().feature() >= 21;
+        System.out.printf("Connecting %d sessions to %s (%s, %d at a time)%n", sessionCount, url,
+                virtualThreads ? "virtual threads" : "platform threads", connectConcurrency);
+        long connectStart = System.nanoTime();
+        List<StompSession> sessions = connectAll(client, virtualThreads);
+        long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart);
+        System.out.printf("Connected %d/%d sessions in %d ms%n", sessions.size(), sessionCount, connectMillis);
+        if (sessions.size() < publisherCount || sessions.isEmpty()) {
+            throw new IllegalStateException("Too few sessions connected to run");
+        }
+        // The simple broker sends no receipts, so give it a moment to register the last subscriptions
+        Thread.sleep(1000);
+        long heapConnected = serverPid == null ? 0 : serverHeapAfterGc();
+        Thread publisher = new Thread(() -> publish(sessions.subList(0, publisherCount)), "load-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        windowStart = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        windowEnd = System.nanoTime();
+        double seconds = (windowEnd - windowStart) / 1e9;
+
+        publisher.interrupt();
+        // Let the backlog drain so slow deliveries are counted rather than lost
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainSeconds);
+        long last = -1;
+        while (histogram.getCount() != last && System.nanoTime() < drainDeadline) {
+            last = histogram.getCount();
+            Thread.sleep(500);
+        }
+        long sentCount = sentInWindow.sum();
+        long receivedCount = histogram.getCount();
+        report(sessions.size(), seconds, sentCount, receivedCount);
+        for (StompSession session : sessions) {
+            session.disconnect();
+        }
+        if (serverPid != null) {
+            // Closing is asynchronous on the server, give it time to clean up every session
+            Thread.sleep(TimeUnit.SECONDS.toMillis(drainSeconds));
+            long heapAfter = serverHeapAfterGc();
+            System.out.printf("Server heap: %.1f MiB idle, %.1f MiB with %d sessions (%.1f KiB per session), "
+                            + "%.1f MiB after they disconnected%n",
+                    heapBefore / 1048576.0, heapConnected / 1048576.0, sessions.size(),
+                    (heapConnected - heapBefore) / 1024.0 / sessions.size(), heapAfter / 1048576.0);
+        }
+    }
+
+    /**
+     * Live heap of the server: full GC through jcmd, then the sum of the heap pools from its Prometheus endpoint.
+     */
+    private long serverHeapAfterGc() throws IOException, InterruptedException {
+        Process jcmd = new ProcessBuilder("jcmd", serverPid, "GC.run")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if (jcmd.waitFor() != 0) {
+            throw new IllegalStateException("jcmd " + serverPid + " GC.run failed");
+        }
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create(metricsUrl)).build(), HttpResponse.BodyHandlers.ofString());
+        long used = 0;
+        for (String line : response.body().split("\n")) {
+            if (line.startsWith("jvm_memory_used_bytes{") && line.contains("area=\"heap\"")) {
+                used += (long) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        return used;
+    }
+
+    private List<StompSession> connectAll(WebSocketStompClient client, boolean virtualThreads) throws InterruptedException {
+        AsyncTaskExecutor executor;
+        ThreadPoolTaskExecutor pool = null;
+        if (virtualThreads) {
+            executor = new VirtualThreadTaskExecutor("load-connect-");
+        } else {
+            pool = new ThreadPoolTaskExecutor();
+            pool.setCorePoolSize(connectConcurrency);
+            pool.setThreadNamePrefix("load-connect-");
+            pool.initialize();
+            executor = pool;
+        }
+
+        Semaphore handshakes = new Semaphore(connectConcurrency);
+        List<Future<StompSession>> pending = new ArrayList<>(sessionCount);
+        for (int i = 0; i < sessionCount; i++) {
+            int index = i;
+            pending.add(executor.submit(() -> {
+                handshakes.acquire();
+                try {
+                    return connect(client, index);
+                } finally {
+                    handshakes.release();
+                }
+            }));
+        }
+
+        List<StompSession> sessions = new ArrayList<>(sessionCount);
+        int failures = 0;
+        for (Future<StompSession> future : pending) {
+            try {
+                sessions.add(future.get());
+            } catch (Exception e) {
+                if (failures++ == 0) {
+                    System.out.println("First connect failure: " + e.getCause());
+                }
+            }
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        return sessions;
+    }
+
+    private StompSession connect(WebSocketStompClient client, int index) throws Exception {
+        String username = "load-" + index;
+        String token = jwtService.generateToken(new AuthenticatedUser(
+                1_000_000L + index, username + "@load.test", username, AuthenticatedUser.DEFAULT_ROLES));
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("Authorization", "Bearer " + token);
+        if (coalesce) {
+            connectHeaders.add("x-coalesce", "true");
+        }
+        StompSession session = client.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders,
+                new StompSessionHandlerAdapter() {
+                    @Override
+                    public void handleTransportError(StompSession session, Throwable exception) {
+                        transportErrors.incrementAndGet();
+                    }
+                }).get(30, TimeUnit.SECONDS);
+
+        session.subscribe("/topic/public", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                onMessage((byte[]) payload);
+            }
+        });
+        return session;
+    }
+
+    private void publish(List<StompSession> publishers) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        int turn = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            // Paced against a fixed schedule, so a slow send does not lower the offered rate
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+                continue;
+            }
+            next += intervalNanos;
+            StompSession session = publishers.get(turn++ % publishers.size());
+            long sentAt = System.nanoTime();
+            try {
+                session.send("/app/chat.sendMessage", Map.of("content", marker + sentAt, "type", "CHAT"));
+                // Same test as the receivers apply, so sent and delivered counts cover the same messages
+                if (sentAt >= windowStart && sentAt < windowEnd) {
+                    sentInWindow.increment();
+                }
+            } catch (RuntimeException e) {
+                transportErrors.incrementAndGet();
+            }
+        }
+    }
+
+    private void onMessage(byte[] payload) {
+        long now = System.nanoTime();
+        try {
+            JsonNode body = objectMapper.readTree(payload);
+            // Coalesced sessions get a JSON array of messages in one frame
+            if (body.isArray()) {
+                for (JsonNode message : body) {
+                    onMessage(message, now);
+                }
+            } else {
+                onMessage(body, now);
+            }
+        } catch (IOException e) {
+            transportErrors.incrementAndGet();
+        }
+    }
+
+    private void onMessage(JsonNode message, long now) {
+        String content = message.path("content").asText("");
+        if (!content.startsWith(marker)) {
+            return;
+        }
+        long sentAt = Long.parseLong(content.substring(marker.length()));
+        if (sentAt >= windowStart && sentAt < windowEnd) {
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(now - sentAt));
+        }
+    }
+
+    private void report(int sessions, double seconds, long sentCount, long receivedCount) {
+        long expected = sentCount * sessions;
+        System.out.println();
+        System.out.printf("Sessions:    %d connected, %d transport errors%n", sessions, transportErrors.get());
+        System.out.printf("Measured:    %.1f s after %d s warmup%n", seconds, warmupSeconds);
+        System.out.printf("Published:   %d (%.1f msg/s, target %d)%n", sentCount, sentCount / seconds, rate);
+        System.out.printf("Delivered:   %d of %d expected (%.2f%%), %.1f msg/s%n", receivedCount, expected,
+                expected == 0 ? 0 : 100.0 * receivedCount / expected, receivedCount / seconds);
+        System.out.printf("Latency ms:  p50 %.2f  p90 %.2f  p99 %.2f  p999 %.2f  max %.2f  mean %.2f  (%d samples)%n",
+                millis(histogram.percentile(50)), millis(histogram.percentile(90)), millis(histogram.percentile(99)),
+                millis(histogram.percentile(99.9)), millis(histogram.getMax()), histogram.getMean() / 1000,
+                histogram.getCount());
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,430 @@
+package com.lmg.backend.broker;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process STOMP 1.2 broker used as a stand-in for RabbitMQ/ActiveMQ.
+ * Point one or more backend nodes at it with chat.broker.mode=relay to get
+ * cross-node fan-out without running an external broker.
+ * Supports CONNECT/STOMP, SUBSCRIBE, UNSUBSCRIBE, SEND, DISCONNECT and receipts,
+ * with exact-match destinations. No persistence, acks or transactions.
+ * Frames are size-checked as they are read: header lines and the number of headers are capped, and a
+ * body may not exceed chat.broker.embedded.max-body-bytes whether or not it declares a content-length.
+ * A malformed or oversized frame gets an ERROR frame and the connection is closed.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.broker.embedded.enabled", havingValue = "true")
+@Slf4j
+public class EmbeddedStompBroker implements SmartLifecycle {
+
+    private final int port;
+    private final String bindAddress;
+    private final int maxBodyBytes;
+
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong messageIds = new AtomicLong();
+
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public EmbeddedStompBroker(@Value("${chat.broker.embedded.port:61613}") int port,
+                               @Value("${chat.broker.embedded.bind-address:127.0.0.1}") String bindAddress,
+                               @Value("${chat.broker.embedded.max-body-bytes:1048576}") int maxBodyBytes) {
+        this.port = port;
+        this.bindAddress = bindAddress;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    @Override
+    public void start() {
+        try {
+            serverSocket = new ServerSocket(port, 128, InetAddress.getByName(bindAddress));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start embedded STOMP broker on " + bindAddress + ":" + port, e);
+        }
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "stomp-broker-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Embedded STOMP broker listening on {}:{}", bindAddress, getPort());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.debug("Error closing embedded broker socket", e);
+        }
+        connections.forEach(Connection::close);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Start before the broker relay (DEFAULT_PHASE) so its first connection attempt succeeds.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 1024;
+    }
+
+    /**
+     * The port actually bound, useful when configured with port 0.
+     */
+    public int getPort() {
+        return serverSocket == null ? port : serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                Thread reader = new Thread(connection::readLoop, "stomp-broker-conn");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Embedded broker failed to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Connection connection, Frame frame) {
+        switch (frame.command()) {
+            case "CONNECT", "STOMP" -> connection.send(new Frame("CONNECTED",
+                    Map.of("version", "1.2", "heart-beat", "0,0", "server", "messagesvs-embedded"), new byte[0]));
+            case "SUBSCRIBE" -> {
+                Subscription subscription = new Subscription(connection, frame.headers().get("id"));
+                String destination = frame.headers().get("destination");
+                subscriptions.computeIfAbsent(destination, d -> ConcurrentHashMap.newKeySet()).add(subscription);
+                connection.subscriptions.put(subscription.id(), destination);
+            }
+            case "UNSUBSCRIBE" -> {
+                String id = frame.headers().get("id");
+                String destination = connection.subscriptions.remove(id);
+                if (destination != null) {
+                    removeSubscription(destination, new Subscription(connection, id));
+                }
+            }
+            case "SEND" -> publish(frame);
+            case "DISCONNECT" -> {
+                sendReceipt(connection, frame);
+                connection.close();
+                return;
+            }
+            default -> {
+                // ACK, NACK and transactions are accepted and ignored
+            }
+        }
+        sendReceipt(connection, frame);
+    }
+
+    private void publish(Frame frame) {
+        String destination = frame.headers().get("destination");
+        Set<Subscription> targets = subscriptions.get(destination);
+        if (targets == null || targets.isEmpty()) {
+            return;
+        }
+        String messageId = Long.toString(messageIds.incrementAndGet());
+        for (Subscription target : targets) {
+            Map<String, String> headers = new LinkedHashMap<>(frame.headers());
+            headers.remove("receipt");
+            headers.remove("transaction");
+            headers.put("subscription", target.id());
+            headers.put("message-id", messageId);
+            target.connection().send(new Frame("MESSAGE", headers, frame.body()));
+        }
+    }
+
+    private void sendReceipt(Connection connection, Frame frame) {
+        String receipt = frame.headers().get("receipt");
+        if (receipt != null) {
+            connection.send(new Frame("RECEIPT", Map.of("receipt-id", receipt), new byte[0]));
+        }
+    }
+
+    private void removeSubscription(String destination, Subscription subscription) {
+        subscriptions.computeIfPresent(destination, (d, subs) -> {
+            subs.remove(subscription);
+            return subs.isEmpty() ? null : subs;
+        });
+    }
+
+    private record Subscription(Connection connection, String id) {
+    }
+
+    record Frame(String command, Map<String, String> headers, byte[] body) {
+    }
+
+    private final class Connection {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final Map<String, String> subscriptions = new ConcurrentHashMap<>();
+        private volatile boolean closed;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        void readLoop() {
+            // Not try-with-resources: closing the stream closes the socket, which must stay open for an ERROR frame
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                Frame frame;
+                while (!closed && (frame = StompFrameCodec.read(in, maxBodyBytes)) != null) {
+                    handle(this, frame);
+                }
+            } catch (SocketException e) {
+                // Peer went away
+            } catch (MalformedFrameException e) {
+                log.warn("Embedded broker closing a connection: {}", e.getMessage());
+                send(new Frame("ERROR", Map.of("message", e.getMessage()), new byte[0]));
+            } catch (IOException e) {
+                log.debug("Embedded broker connection failed", e);
+            } finally {
+                close();
+            }
+        }
+
+        void send(Frame frame) {
+            if (closed) {
+                return;
+            }
+            byte[] bytes = StompFrameCodec.encode(frame);
+            try {
+                synchronized (this) {
+                    out.write(bytes);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscriptions.forEach((id, destination) -> removeSubscription(destination, new Subscription(this, id)));
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Error closing broker connection", e);
+            }
+        }
+    }
+
+    /**
+     * A frame that breaks the protocol or the size limits; the connection cannot be resynchronised after it.
+     */
+    static final class MalformedFrameException extends IOException {
+
+        MalformedFrameException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * STOMP 1.2 frame reading and writing, including header value escaping.
+     */
+    static final class StompFrameCodec {
+
+        static final int MAX_LINE_BYTES = 8192;
+        static final int MAX_HEADERS = 128;
+
+        private StompFrameCodec() {
+        }
+
+        /**
+         * Read the next frame, skipping heart-beat EOLs.
+         *
+         * @return The frame, or null at end of stream
+         * @throws MalformedFrameException if a line, the headers or the body are too large, or content-length is invalid
+         */
+        static Frame read(InputStream in, int maxBodyBytes) throws IOException {
+            String command;
+            do {
+                command = readLine(in);
+                if (command == null) {
+                    return null;
+                }
+            } while (command.isEmpty());
+
+            boolean escaped = !command.equals("CONNECT") && !command.equals("CONNECTED");
+            Map<String, String> headers = new LinkedHashMap<>();
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                if (headers.size() == MAX_HEADERS) {
+                    throw new MalformedFrameException("More than " + MAX_HEADERS + " headers");
+                }
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = escaped ? unescape(line.substring(0, colon)) : line.substring(0, colon);
+                String value = escaped ? unescape(line.substring(colon + 1)) : line.substring(colon + 1);
+                // Repeated headers: the first one wins
+                headers.putIfAbsent(name, value);
+            }
+
+            byte[] body;
+            String contentLength = headers.get("content-length");
+            if (contentLength != null) {
+                int length = parseContentLength(contentLength, maxBodyBytes);
+                body = in.readNBytes(length);
+                if (body.length < length) {
+                    return null;
+                }
+                if (in.read() != 0) {
+                    throw new IOException("Frame body not terminated by NULL");
+                }
+            } else {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                int b;
+                while ((b = in.read()) > 0) {
+                    if (buffer.size() == maxBodyBytes) {
+                        throw new MalformedFrameException("Frame body larger than " + maxBodyBytes + " bytes");
+                    }
+                    buffer.write(b);
+                }
+                if (b < 0) {
+                    return null;
+                }
+                body = buffer.toByteArray();
+            }
+            return new Frame(command, headers, body);
+        }
+
+        private static int parseContentLength(String value, int maxBodyBytes) throws MalformedFrameException {
+            int length;
+            try {
+                length = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new MalformedFrameException("Invalid content-length: " + value);
+            }
+            if (length < 0) {
+                throw new MalformedFrameException("Invalid content-length: " + value);
+            }
+            if (length > maxBodyBytes) {
+                throw new MalformedFrameException("Frame body larger than " + maxBodyBytes + " bytes");
+            }
+            return length;
+        }
+
+        static byte[] encode(Frame frame) {
+            StringBuilder head = new StringBuilder(128).append(frame.command()).append('\n');
+            boolean escape = !frame.command().equals("CONNECTED");
+            frame.headers().forEach((name, value) -> {
+                if (!name.equals("content-length")) {
+                    head.append(escape ? escape(name) : name).append(':')
+                            .append(escape ? escape(value) : value).append('\n');
+                }
+            });
+            head.append("content-length:").append(frame.body().length).append("\n\n");
+
+            byte[] headBytes = head.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] bytes = new byte[headBytes.length + frame.body().length + 1];
+            System.arraycopy(headBytes, 0, bytes, 0, headBytes.length);
+            System.arraycopy(frame.body(), 0, bytes, headBytes.length, frame.body().length);
+            return bytes;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    byte[] bytes = line.toByteArray();
+                    int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+                }
+                if (line.size() == MAX_LINE_BYTES) {
+                    throw new MalformedFrameException("Frame line longer than " + MAX_LINE_BYTES + " bytes");
+                }
+                line.write(b);
+            }
+            return null;
+        }
+
+        private static String unescape(String value) {
+            if (value.indexOf('\\') < 0) {
+                return value;
+            }
+            StringBuilder out = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' && i + 1 < value.length()) {
+                    char next = value.charAt(++i);
+                    switch (next) {
+                        case 'n' -> out.append('\n');
+                        case 'r' -> out.append('\r');
+                        case 'c' -> out.append(':');
+                        default -> out.append(next);
+                    }
+                } else {
+                    out.append(c);
+                }
+            }
+            return out.toString();
+        }
+
+        private static String escape(String value) {
+            StringBuilder out = null;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                String replacement = switch (c) {
+                    case '\\' -> "\\\\";
+                    case ':' -> "\\c";
+                    case '\n' -> "\\n";
+                    case '\r' -> "\\r";
+                    default -> null;
+                };
+                if (replacement != null && out == null) {
+                    out = new StringBuilder(value.length() + 8).append(value, 0, i);
+                }
+                if (out != null) {
+                    if (replacement != null) {
+                        out.append(replacement);
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+            return out == null ? value : out.toString();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.lmg.backend.chat;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Sends a message only to the destination of its room, so each message reaches the
+ * room's subscribers instead of every connected socket.
+ * - public: /topic/public
+ * - named room: /topic/room.{roomId}
+ * - direct: /user/queue/messages of both participants
+ * The message is serialized to JSON once, up front; the broker hands the same byte[]
+ * to every subscriber, only the STOMP frame headers are written per session.
+ * The binary form rides along as a message header; behind a broker relay only STOMP headers
+ * survive the trip, so relayed broadcasts are marked and BinaryPayloadInterceptor decodes the JSON.
+ */
+@Component
+public class ChatBroadcaster {
+
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final ObjectWriter writer;
+    private final Counter publicBroadcasts;
+    private final Counter roomBroadcasts;
+    private final Counter directBroadcasts;
+    private final boolean relay;
+
+    public ChatBroadcaster(SimpMessageSendingOperations messagingTemplate, ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry, @Value("${chat.broker.mode:simple}") String brokerMode) {
+        this.messagingTemplate = messagingTemplate;
+        this.relay = "relay".equals(brokerMode);
+        // Bound to the DTO type once, so serializers are resolved ahead of the first send
+        this.writer = objectMapper.writerFor(ChatMessageView.class);
+        this.publicBroadcasts = broadcastCounter(meterRegistry, "public");
+        this.roomBroadcasts = broadcastCounter(meterRegistry, "room");
+        this.directBroadcasts = broadcastCounter(meterRegistry, "direct");
+    }
+
+    public void broadcast(ChatMessageView message) {
+        byte[] payload = encode(message);
+        // Sessions that negotiated the binary format pick this up on the outbound channel
+        ChatMessageBinaryCodec.LazyEncoding binary = new ChatMessageBinaryCodec.LazyEncoding(message);
+        String room = message.getRoom();
+        if (ChatRooms.isDirect(room)) {
+            directBroadcasts.increment();
+            for (String participant : ChatRooms.participants(room)) {
+                // Same user destination convertAndSendToUser builds, minus the conversion
+                String user = participant.replace("/", "%2F");
+                messagingTemplate.send("/user/" + user + ChatRooms.DIRECT_QUEUE, toMessage(payload, binary));
+            }
+        } else {
+            (ChatRooms.PUBLIC.equals(room) ? publicBroadcasts : roomBroadcasts).increment();
+            messagingTemplate.send(ChatRooms.topicFor(room), toMessage(payload, binary));
+        }
+    }
+
+    /**
+     * The JSON a subscriber receives for a message.
+     */
+    public byte[] encode(ChatMessageView message) {
+        try {
+            return writer.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize message " + message.getId(), e);
+        }
+    }
+
+    private static Counter broadcastCounter(MeterRegistry meterRegistry, String kind) {
+        // Tagged by kind of room only, a tag per room would grow without bound
+        return Counter.builder("chat.messages.broadcast")
+                .description("Messages sent to the broker for delivery")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    private Message<byte[]> toMessage(byte[] payload, ChatMessageBinaryCodec.LazyEncoding binary) {
+        // Already encoded, so the template's message converter is skipped
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setHeader(ChatMessageBinaryCodec.LazyEncoding.HEADER, binary);
+        if (relay) {
+            accessor.setNativeHeader(ChatMessageBinaryCodec.LazyEncoding.RELAY_HEADER, "true");
+        }
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+}
@@ -1,61 +1,144 @@
 package com.lmg.backend.chat;
 
-import lombok.RequiredArgsConstructor;
+import com.lmg.backend.presence.PresenceRegistry;
+import com.lmg.backend.room.RoomMembershipService;
+import com.lmg.backend.search.MessageSearchIndex;
+import com.lmg.backend.unread.UnreadService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Controller;
 
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Controller for handling WebSocket chat operations.
  * Manages message sending and user join/leave events.
  */
 @Controller
-@RequiredArgsConstructor
+@Slf4j
 public class ChatController {
-    private final ChatMessageRepository repository;
+    private final MessageStore messageStore;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageSearchIndex searchIndex;
+    private final UnreadService unreadService;
+    private final ChatBroadcaster broadcaster;
+    private final RoomMembershipService membershipService;
+    private final PresenceRegistry presenceRegistry;
+    private final Timer appendTimer;
+
+    public ChatController(MessageStore messageStore, RecentMessageCache recentMessageCache,
+                          MessageSearchIndex searchIndex, UnreadService unreadService, ChatBroadcaster broadcaster,
+                          RoomMembershipService membershipService, PresenceRegistry presenceRegistry,
+                          MeterRegistry meterRegistry) {
+        this.messageStore = messageStore;
+        this.recentMessageCache = recentMessageCache;
+        this.searchIndex = searchIndex;
+        this.unreadService = unreadService;
+        this.broadcaster = broadcaster;
+        this.membershipService = membershipService;
+        this.presenceRegistry = presenceRegistry;
+        this.appendTimer = Timer.builder("chat.messages.append")
+                .description("Time to hand a message to the message store on the send path")
+                .register(meterRegistry);
+    }
 
 
     /**
-     * Handles incoming chat messages and broadcasts them to all connected clients.
+     * Handles incoming chat messages for the public room.
      * Messages are sent to /app/chat.sendMessage and broadcasted to /topic/public.
+     * Persistence happens asynchronously so the broadcast does not wait on the message store.
      *
      * @param chatMessage The chat message payload containing sender, content, and type
-     * @return The same message to be broadcasted to all subscribers
+     * @param principal The user authenticated on CONNECT, null only when chat.ws.require-auth is off
      */
     @MessageMapping("/chat.sendMessage")
-    @SendTo("/topic/public")
-    public ChatMessage sendMessage(@Payload ChatMessage chatMessage) {
-        System.out.println("=== BEFORE SAVE ===");
-        System.out.println("Content: " + chatMessage.getContent());
-        System.out.println("Sender: " + chatMessage.getSender());
-        System.out.println("Type: " + chatMessage.getType());
-        System.out.println("ID before save: " + chatMessage.getId());
-
-        ChatMessage saved = repository.save(chatMessage);
+    public void sendMessage(@Payload ChatMessage chatMessage, Principal principal) {
+        accept(chatMessage, ChatRooms.PUBLIC, principal);
+    }
 
-        System.out.println("=== AFTER SAVE ===");
-        System.out.println("ID after save: " + saved.getId());
-        System.out.println("SentAt: " + saved.getSentAt());
+    /**
+     * Handles messages for a named room.
+     * Messages are sent to /app/chat.room.{roomId} and broadcasted to /topic/room.{roomId},
+     * which only the room's members can subscribe to.
+     *
+     * @param roomId The room, taken from the destination
+     * @param chatMessage The chat message payload
+     * @param principal The user authenticated on CONNECT
+     * @throws AccessDeniedException if the sender is not a member of the room
+     */
+    @MessageMapping("/chat.room.{roomId}")
+    public void sendToRoom(@DestinationVariable String roomId, @Payload ChatMessage chatMessage, Principal principal) {
+        if (principal == null || !membershipService.isMember(principal.getName(), roomId)) {
+            throw new AccessDeniedException("Not a member of room " + roomId);
+        }
+        accept(chatMessage, roomId, principal);
+    }
 
-        return saved;
+    /**
+     * Handles direct messages.
+     * Messages are sent to /app/chat.dm.{recipient} and delivered to the /user/queue/messages
+     * of both the recipient and the sender (so the sender's other tabs see it too).
+     *
+     * @param recipient Username of the other participant, taken from the destination
+     * @param chatMessage The chat message payload
+     * @param principal The user authenticated on CONNECT
+     */
+    @MessageMapping("/chat.dm.{recipient}")
+    public void sendDirect(@DestinationVariable String recipient, @Payload ChatMessage chatMessage, Principal principal) {
+        if (principal == null) {
+            throw new AccessDeniedException("Direct messages need an authenticated session");
+        }
+        // ':' separates the participants in the room key
+        if (recipient.isBlank() || recipient.indexOf(':') >= 0 || principal.getName().indexOf(':') >= 0) {
+            throw new IllegalArgumentException("Invalid recipient " + recipient);
+        }
+        accept(chatMessage, ChatRooms.direct(principal.getName(), recipient), principal);
     }
 
     /**
      * Handles user join events when a new user connects to the chat.
-     * Stores the username in the WebSocket session and broadcasts the join event.
+     * Stores the username in the WebSocket session and marks the user online; the join is
+     * announced with the next presence delta on /topic/presence rather than broadcast here.
+     * Authenticated sessions are already online from CONNECT, so this is a no-op for them.
      *
      * @param chatMessage The join message containing the username
      * @param headerAccessor Provides access to WebSocket session attributes
-     * @return The join message to be broadcasted to all subscribers
+     * @param principal The user authenticated on CONNECT, null only when chat.ws.require-auth is off
      */
     @MessageMapping("/chat.addUser")
-    @SendTo("/topic/public")
-    public ChatMessage addUser(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
+    public void addUser(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor,
+                        Principal principal) {
+        if (principal != null) {
+            chatMessage.setSender(principal.getName());
+        }
         // Store username in WebSocket session for later retrieval (e.g., on disconnect)
         headerAccessor.getSessionAttributes().put("Username", chatMessage.getSender());
-        return chatMessage;
+        presenceRegistry.sessionConnected(headerAccessor.getSessionId(), chatMessage.getSender());
+    }
+
+    private void accept(ChatMessage chatMessage, String room, Principal principal) {
+        // Never trust the sender or room in the payload
+        if (principal != null) {
+            chatMessage.setSender(principal.getName());
+        }
+        chatMessage.setRoom(room);
+        // ID and sentAt are assigned by the store without waiting for the write to reach disk
+        long start = System.nanoTime();
+        ChatMessage saved = messageStore.append(chatMessage);
+        appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        ChatMessageView view = ChatMessageView.from(saved);
+        recentMessageCache.add(view);
+        searchIndex.add(view);
+        unreadService.messageSent(room, saved.getSender());
+        broadcaster.broadcast(view);
+        log.debug("Accepted message {} from {} in {}", saved.getId(), saved.getSender(), room);
     }
 }
 
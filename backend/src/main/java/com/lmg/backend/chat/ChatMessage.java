@@ -7,7 +7,12 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // Keyset index for per-room history pages, see ChatMessageRepository
+        @Index(name = "idx_messages_room_sent_at_id", columnList = "room, sent_at, id"),
+        // Oldest rows first across rooms, for MessageRetentionJob
+        @Index(name = "idx_messages_sent_at_id", columnList = "sent_at, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -15,14 +20,22 @@ import java.time.LocalDateTime;
 @Builder
 public class ChatMessage {
 
+    /** IDs reserved per sequence call, shared with MessageIdAllocator */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_seq")
+    @SequenceGenerator(name = "messages_seq", sequenceName = "messages_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     private String content;
 
     private String sender;
 
+    // Room key, see ChatRooms; always set by the server from the destination, never from the payload
+    @Column(nullable = false, length = 128)
+    private String room;
+
     @Enumerated(EnumType.STRING)
     private MessageType type;
 
@@ -0,0 +1,190 @@
+package com.lmg.backend.chat;
+
+import org.springframework.util.MimeType;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+/**
+ * Compact binary form of a chat message, an alternative to JSON for clients on a raw WebSocket.
+ * Layout (big-endian):
+ * - byte: format version (1)
+ * - byte: MessageType ordinal, 0xFF for none
+ * - byte: flags, which of the optional fields follow (id, sentAt, room, sender, content)
+ * - long: id, if present
+ * - long: sentAt in microseconds since the epoch (UTC), if present
+ * - room, sender, content, if present: unsigned varint byte length, then UTF-8 bytes
+ * Values are bounded by the transport's message size limit, so lengths are never large.
+ */
+public final class ChatMessageBinaryCodec {
+
+    /** Content type of binary frames; Spring sends application/octet-stream frames as WebSocket binary messages */
+    public static final MimeType MIME_TYPE = new MimeType("application", "octet-stream", Map.of("format", "chat-v1"));
+
+    private static final byte VERSION = 1;
+    private static final int NO_TYPE = 0xFF;
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_SENT_AT = 1 << 1;
+    private static final int HAS_ROOM = 1 << 2;
+    private static final int HAS_SENDER = 1 << 3;
+    private static final int HAS_CONTENT = 1 << 4;
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private ChatMessageBinaryCodec() {
+    }
+
+    public static byte[] encode(ChatMessageView message) {
+        byte[] room = utf8(message.getRoom());
+        byte[] sender = utf8(message.getSender());
+        byte[] content = utf8(message.getContent());
+
+        int flags = (message.getId() != null ? HAS_ID : 0)
+                | (message.getSentAt() != null ? HAS_SENT_AT : 0)
+                | (room != null ? HAS_ROOM : 0)
+                | (sender != null ? HAS_SENDER : 0)
+                | (content != null ? HAS_CONTENT : 0);
+
+        int size = 3 + ((flags & HAS_ID) != 0 ? 8 : 0) + ((flags & HAS_SENT_AT) != 0 ? 8 : 0)
+                + sizeOf(room) + sizeOf(sender) + sizeOf(content);
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(VERSION);
+        out.put((byte) (message.getType() == null ? NO_TYPE : message.getType().ordinal()));
+        out.put((byte) flags);
+        if (message.getId() != null) {
+            out.putLong(message.getId());
+        }
+        if (message.getSentAt() != null) {
+            out.putLong(ChronoUnit.MICROS.between(Instant.EPOCH, message.getSentAt().toInstant(ZoneOffset.UTC)));
+        }
+        putString(out, room);
+        putString(out, sender);
+        putString(out, content);
+        return out.array();
+    }
+
+    /**
+     * Parse a message produced by {@link #encode(ChatMessageView)} (or by a client using the same layout).
+     *
+     * @throws IllegalArgumentException if the bytes are not a valid message
+     */
+    public static ChatMessageView decode(byte[] bytes) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported binary message version " + version);
+            }
+            int typeOrdinal = in.get() & 0xFF;
+            if (typeOrdinal != NO_TYPE && typeOrdinal >= TYPES.length) {
+                throw new IllegalArgumentException("Unknown message type " + typeOrdinal);
+            }
+            int flags = in.get() & 0xFF;
+
+            Long id = (flags & HAS_ID) != 0 ? in.getLong() : null;
+            LocalDateTime sentAt = null;
+            if ((flags & HAS_SENT_AT) != 0) {
+                Instant instant = Instant.EPOCH.plus(in.getLong(), ChronoUnit.MICROS);
+                sentAt = LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+            }
+            String room = (flags & HAS_ROOM) != 0 ? getString(in) : null;
+            String sender = (flags & HAS_SENDER) != 0 ? getString(in) : null;
+            String content = (flags & HAS_CONTENT) != 0 ? getString(in) : null;
+            MessageType type = typeOrdinal == NO_TYPE ? null : TYPES[typeOrdinal];
+            return new ChatMessageView(id, room, sender, content, type, sentAt);
+        } catch (BufferUnderflowException | ArithmeticException | DateTimeException e) {
+            throw new IllegalArgumentException("Truncated or malformed binary message", e);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = value.length;
+        int varint = 1;
+        while ((length >>>= 7) != 0) {
+            varint++;
+        }
+        return varint + value.length;
+    }
+
+    private static void putString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            return;
+        }
+        int length = value.length;
+        while ((length & ~0x7F) != 0) {
+            out.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        out.put((byte) length);
+        out.put(value);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28) {
+                throw new IllegalArgumentException("String length too long");
+            }
+            int b = in.get();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("String length " + length + " exceeds the message");
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Binary form of one broadcast, encoded on first use and then shared by every session that asked for it.
+     * Travels as a message header next to the JSON payload, so broadcasts with no binary
+     * subscribers never pay for the encoding.
+     */
+    public static final class LazyEncoding {
+
+        /** Message header carrying the LazyEncoding of a broadcast */
+        public static final String HEADER = "chatBinaryPayload";
+
+        /**
+         * STOMP header marking a broadcast whose JSON body is a ChatMessageView. An external broker
+         * drops HEADER but keeps STOMP headers, so behind a relay the binary form is rebuilt from the JSON.
+         */
+        public static final String RELAY_HEADER = "x-chat-message";
+
+        private final ChatMessageView message;
+        private volatile byte[] bytes;
+
+        public LazyEncoding(ChatMessageView message) {
+            this.message = message;
+        }
+
+        public byte[] get() {
+            byte[] result = bytes;
+            if (result == null) {
+                // Racing threads encode the same bytes, either result is fine to keep
+                result = encode(message);
+                bytes = result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.lmg.backend.chat;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+
+/**
+ * Message converter for the binary chat format (see ChatMessageBinaryCodec).
+ * Only applies to frames whose content-type is exactly application/octet-stream;format=chat-v1,
+ * so JSON stays the default and plain octet-stream payloads are left to the byte[] converter.
+ */
+public class ChatMessageBinaryConverter extends AbstractMessageConverter {
+
+    public ChatMessageBinaryConverter() {
+        super(ChatMessageBinaryCodec.MIME_TYPE);
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == ChatMessage.class || clazz == ChatMessageView.class;
+    }
+
+    @Override
+    protected boolean supportsMimeType(MessageHeaders headers) {
+        // The base check ignores parameters, the format parameter is what tells this apart from raw bytes
+        MimeType mimeType = getMimeType(headers);
+        return mimeType != null && super.supportsMimeType(headers)
+                && ChatMessageBinaryCodec.MIME_TYPE.getParameter("format").equals(mimeType.getParameter("format"));
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        if (!(message.getPayload() instanceof byte[] bytes)) {
+            return null;
+        }
+        ChatMessageView view;
+        try {
+            view = ChatMessageBinaryCodec.decode(bytes);
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException(message, e.getMessage(), e);
+        }
+        if (targetClass == ChatMessageView.class) {
+            return view;
+        }
+        // Inbound sends only carry what the client controls; ID, room and sentAt are assigned by the server
+        return ChatMessage.builder()
+                .content(view.getContent())
+                .sender(view.getSender())
+                .type(view.getType())
+                .build();
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        ChatMessageView view = payload instanceof ChatMessage message ? ChatMessageView.from(message) : (ChatMessageView) payload;
+        return ChatMessageBinaryCodec.encode(view);
+    }
+}
@@ -1,6 +1,56 @@
 package com.lmg.backend.chat;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
 
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
-    // That's it! Spring provides all basic methods automatically
-}
\ No newline at end of file
+
+    // History queries are keyset paginated on (sentAt, id) within a room and served by
+    // idx_messages_room_sent_at_id. The "sentAt <= :sentAt and (...)" form gives the index
+    // a range bound instead of an OR scan.
+
+    @Query("select new com.lmg.backend.chat.ChatMessageView(m.id, m.room, m.sender, m.content, m.type, m.sentAt) " +
+            "from ChatMessage m where m.room = :room order by m.sentAt desc, m.id desc")
+    List<ChatMessageView> findLatest(@Param("room") String room, Limit limit);
+
+    @Query("select new com.lmg.backend.chat.ChatMessageView(m.id, m.room, m.sender, m.content, m.type, m.sentAt) " +
+            "from ChatMessage m " +
+            "where m.room = :room and m.sentAt <= :sentAt and (m.sentAt < :sentAt or m.id < :id) " +
+            "order by m.sentAt desc, m.id desc")
+    List<ChatMessageView> findBefore(@Param("room") String room, @Param("sentAt") LocalDateTime sentAt,
+                                     @Param("id") long id, Limit limit);
+
+    @Query("select new com.lmg.backend.chat.ChatMessageView(m.id, m.room, m.sender, m.content, m.type, m.sentAt) " +
+            "from ChatMessage m " +
+            "where m.room = :room and m.sentAt >= :sentAt and (m.sentAt > :sentAt or m.id > :id) " +
+            "order by m.sentAt asc, m.id asc")
+    List<ChatMessageView> findAfter(@Param("room") String room, @Param("sentAt") LocalDateTime sentAt,
+                                    @Param("id") long id, Limit limit);
+
+    // The oldest rows of all rooms in (sentAt, id) order, served by idx_messages_sent_at_id; for retention
+
+    @Query("select new com.lmg.backend.chat.ChatMessageView(m.id, m.room, m.sender, m.content, m.type, m.sentAt) " +
+            "from ChatMessage m order by m.sentAt asc, m.id asc")
+    List<ChatMessageView> findOldest(Limit limit);
+
+    @Query("select new com.lmg.backend.chat.ChatMessageView(m.id, m.room, m.sender, m.content, m.type, m.sentAt) " +
+            "from ChatMessage m " +
+            "where m.sentAt >= :sentAt and (m.sentAt > :sentAt or m.id > :id) " +
+            "order by m.sentAt asc, m.id asc")
+    List<ChatMessageView> findOldestAfter(@Param("sentAt") LocalDateTime sentAt, @Param("id") long id, Limit limit);
+
+    // Walks the primary key, for rebuilding in-memory indexes from the whole table
+    @Query("select new com.lmg.backend.chat.ChatMessageView(m.id, m.room, m.sender, m.content, m.type, m.sentAt) " +
+            "from ChatMessage m where m.id > :id order by m.id asc")
+    List<ChatMessageView> findAllAfterId(@Param("id") long id, Limit limit);
+
+    // Where such a rebuild starts when it only needs the newest rows; skips count primary key entries, not rows
+    @Query(value = "select id from messages order by id desc offset :count rows fetch next 1 row only", nativeQuery = true)
+    Optional<Long> findIdBeforeLatest(@Param("count") int count);
+}
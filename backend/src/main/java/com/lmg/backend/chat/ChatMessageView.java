@@ -0,0 +1,30 @@
+package com.lmg.backend.chat;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a chat message, used both for history responses and as the
+ * payload broadcast to subscribers.
+ * Selected straight from JPQL so history reads skip entity hydration and dirty tracking.
+ * Null fields (the ID and content of JOIN/LEAVE events) are left out of the JSON.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Getter
+@AllArgsConstructor
+public class ChatMessageView {
+    private Long id;
+    private String room;
+    private String sender;
+    private String content;
+    private MessageType type;
+    private LocalDateTime sentAt;
+
+    public static ChatMessageView from(ChatMessage message) {
+        return new ChatMessageView(message.getId(), message.getRoom(), message.getSender(), message.getContent(),
+                message.getType(), message.getSentAt());
+    }
+}
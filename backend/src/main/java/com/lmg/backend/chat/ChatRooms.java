@@ -0,0 +1,62 @@
+package com.lmg.backend.chat;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Room keys and the STOMP destinations they map to.
+ * - "public": the lobby everyone is in, broadcast on /topic/public
+ * - "{roomId}": a named room, broadcast on /topic/room.{roomId} to its members only
+ * - "dm:{userA}:{userB}": a direct conversation, delivered to both users' /user/queue/messages
+ */
+public final class ChatRooms {
+
+    public static final String PUBLIC = "public";
+    public static final String PUBLIC_TOPIC = "/topic/public";
+    public static final String ROOM_TOPIC_PREFIX = "/topic/room.";
+    public static final String DIRECT_QUEUE = "/queue/messages";
+
+    private static final String DIRECT_PREFIX = "dm:";
+    private static final Pattern ROOM_ID = Pattern.compile("[a-z0-9_-]{1,48}");
+
+    private ChatRooms() {
+    }
+
+    /**
+     * Whether a client-chosen room ID is allowed (lowercase letters, digits, '-' and '_').
+     */
+    public static boolean isValidRoomId(String roomId) {
+        return roomId != null && ROOM_ID.matcher(roomId).matches() && !roomId.equals(PUBLIC);
+    }
+
+    /**
+     * Room key of the direct conversation between two users, the same whichever of them asks.
+     */
+    public static String direct(String userA, String userB) {
+        return userA.compareTo(userB) <= 0
+                ? DIRECT_PREFIX + userA + ":" + userB
+                : DIRECT_PREFIX + userB + ":" + userA;
+    }
+
+    public static boolean isDirect(String room) {
+        return room.startsWith(DIRECT_PREFIX);
+    }
+
+    /**
+     * The users of a direct conversation key (one entry for a conversation with oneself).
+     */
+    public static List<String> participants(String directRoom) {
+        String users = directRoom.substring(DIRECT_PREFIX.length());
+        int separator = users.indexOf(':');
+        String first = users.substring(0, separator);
+        String second = users.substring(separator + 1);
+        return first.equals(second) ? List.of(first) : List.of(first, second);
+    }
+
+    /**
+     * Topic a named room (or the public room) is broadcast on.
+     */
+    public static String topicFor(String room) {
+        return PUBLIC.equals(room) ? PUBLIC_TOPIC : ROOM_TOPIC_PREFIX + room;
+    }
+}
@@ -0,0 +1,108 @@
+package com.lmg.backend.chat;
+
+import com.lmg.backend.retention.MessageArchive;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Messages table store: batched writes through the write-behind queue, keyset reads through the repository.
+ * The table only holds the hot window (see MessageRetentionJob); a page that runs past it continues
+ * in the MessageArchive. MessageRetentionJob archives in (sent_at, id) order, not ID order, so archived
+ * rows are older than every row left in the table and a page is simply the table's rows followed (reading
+ * back) or preceded (reading forward) by the archive's. That holds as long as no row reaches the table
+ * with a sent_at older than the archived ones; write-behind batches land within seconds, well inside the
+ * hot window.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JdbcMessageStore implements MessageStore {
+
+    private static final Comparator<ChatMessageView> OLDEST_FIRST =
+            Comparator.comparing(ChatMessageView::getSentAt).thenComparing(ChatMessageView::getId);
+
+    private final MessageWriteBehindQueue writeBehindQueue;
+    private final ChatMessageRepository repository;
+    private final MessageArchive archive;
+
+    @Override
+    public ChatMessage append(ChatMessage message) {
+        return writeBehindQueue.enqueue(message);
+    }
+
+    @Override
+    public List<ChatMessageView> findLatest(String room, int limit) {
+        return withArchivedBefore(room, null, repository.findLatest(room, Limit.of(limit)), limit);
+    }
+
+    @Override
+    public List<ChatMessageView> findBefore(String room, MessageCursor cursor, int limit) {
+        return withArchivedBefore(room, cursor, repository.findBefore(room, cursor.sentAt(), cursor.id(), Limit.of(limit)), limit);
+    }
+
+    /**
+     * Archived rows, then table rows, merged with messages the write-behind queue has not written yet:
+     * a catch-up read must not skip a message that was broadcast but is still waiting for its batch.
+     */
+    @Override
+    public List<ChatMessageView> findAfter(String room, MessageCursor cursor, int limit) {
+        // Taken before the table is read, so a message written in between is in at least one of the two
+        List<ChatMessageView> unwritten = writeBehindQueue.findUnwrittenAfter(room, cursor, limit);
+        List<ChatMessageView> rows = archive.findAfter(room, cursor, limit);
+        if (rows.size() < limit) {
+            // Continue after the last archived row, which skips rows archived but not yet deleted
+            MessageCursor from = rows.isEmpty() ? cursor : MessageCursor.of(rows.get(rows.size() - 1));
+            rows.addAll(repository.findAfter(room, from.sentAt(), from.id(), Limit.of(limit - rows.size())));
+        }
+        if (unwritten.isEmpty()) {
+            return rows;
+        }
+        Map<Long, ChatMessageView> merged = new LinkedHashMap<>();
+        for (ChatMessageView row : rows) {
+            merged.put(row.getId(), row);
+        }
+        for (ChatMessageView message : unwritten) {
+            merged.putIfAbsent(message.getId(), message);
+        }
+        return merged.values().stream()
+                .sorted(OLDEST_FIRST)
+                .limit(limit)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public List<ChatMessageView> scan(long afterId, int limit) {
+        return repository.findAllAfterId(afterId, Limit.of(limit));
+    }
+
+    @Override
+    public long idBeforeLatest(int count) {
+        return repository.findIdBeforeLatest(count).orElse(0L);
+    }
+
+    /**
+     * Fill up a short newest-first page from the table with archived rows older than its last row.
+     */
+    private List<ChatMessageView> withArchivedBefore(String room, MessageCursor cursor, List<ChatMessageView> rows, int limit) {
+        if (rows.size() == limit) {
+            return rows;
+        }
+        MessageCursor from = rows.isEmpty() ? cursor : MessageCursor.of(rows.get(rows.size() - 1));
+        List<ChatMessageView> archived = archive.findBefore(room, from, limit - rows.size());
+        if (archived.isEmpty()) {
+            return rows;
+        }
+        List<ChatMessageView> page = new ArrayList<>(rows);
+        page.addAll(archived);
+        return page;
+    }
+}
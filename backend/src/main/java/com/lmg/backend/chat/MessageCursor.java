@@ -0,0 +1,45 @@
+package com.lmg.backend.chat;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Keyset position in the message history, ordered by (sentAt, id).
+ * Encoded for clients as "{epochMicros}-{id}" so it survives a round trip through a URL.
+ *
+ * @param sentAt When the message was sent
+ * @param id The message ID, used to break ties between messages sent in the same microsecond
+ */
+public record MessageCursor(LocalDateTime sentAt, long id) {
+
+    public static MessageCursor of(ChatMessageView message) {
+        return new MessageCursor(message.getSentAt(), message.getId());
+    }
+
+    /**
+     * Parse a cursor produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the value is not a valid cursor
+     */
+    public static MessageCursor decode(String value) {
+        int dash = value.lastIndexOf('-');
+        if (dash <= 0 || dash == value.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        try {
+            long micros = Long.parseLong(value.substring(0, dash));
+            long id = Long.parseLong(value.substring(dash + 1));
+            Instant instant = Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+            return new MessageCursor(LocalDateTime.ofInstant(instant, ZoneOffset.UTC), id);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value, e);
+        }
+    }
+
+    public String encode() {
+        long micros = ChronoUnit.MICROS.between(Instant.EPOCH, sentAt.toInstant(ZoneOffset.UTC));
+        return micros + "-" + id;
+    }
+}
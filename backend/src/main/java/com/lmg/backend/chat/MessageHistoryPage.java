@@ -0,0 +1,19 @@
+package com.lmg.backend.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of message history, oldest message first.
+ * nextCursor continues in the same direction the page was requested in (null for an empty page),
+ * hasMore tells whether that next request would return anything right now.
+ */
+@Getter
+@AllArgsConstructor
+public class MessageHistoryPage {
+    private List<ChatMessageView> messages;
+    private String nextCursor;
+    private boolean hasMore;
+}
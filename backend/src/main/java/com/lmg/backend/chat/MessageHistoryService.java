@@ -0,0 +1,90 @@
+package com.lmg.backend.chat;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keyset-paginated reads of the message history.
+ * Pages never use OFFSET, so the cost of a page does not grow with how far back it is.
+ * Recent pages come from the in-memory RecentMessageCache; the message store is only
+ * queried when a cursor reaches past what the cache holds.
+ */
+@Service
+@RequiredArgsConstructor
+public class MessageHistoryService {
+
+    private final MessageStore messageStore;
+    private final RecentMessageCache recentMessageCache;
+
+    @Value("${chat.history.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${chat.history.max-page-size:200}")
+    private int maxPageSize;
+
+    /**
+     * Load a page of a room's history.
+     * - no cursor: the most recent messages
+     * - before: messages older than the cursor (scrolling back)
+     * - after: messages newer than the cursor (catching up after a reconnect)
+     *
+     * @param room Room key, see ChatRooms; access must be checked by the caller
+     * @param before Cursor to read backwards from, may be null
+     * @param after Cursor to read forwards from, may be null
+     * @param limit Requested page size, clamped to the configured maximum
+     * @return The page in chronological order
+     * @throws IllegalArgumentException if a cursor is malformed or both cursors are given
+     */
+    public MessageHistoryPage getPage(String room, String before, String after, Integer limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Use either before or after, not both");
+        }
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        // Ask for one extra row to find out whether another page exists
+        int fetch = pageSize + 1;
+
+        if (after != null) {
+            MessageCursor cursor = MessageCursor.decode(after);
+            List<ChatMessageView> rows = recentMessageCache.findAfter(room, cursor, fetch);
+            if (rows == null) {
+                rows = messageStore.findAfter(room, cursor, fetch);
+            }
+            return forwardPage(rows, pageSize);
+        }
+
+        MessageCursor cursor = before == null ? null : MessageCursor.decode(before);
+        List<ChatMessageView> rows = recentMessageCache.findBefore(room, cursor, fetch);
+        if (rows == null) {
+            rows = cursor == null
+                    ? messageStore.findLatest(room, fetch)
+                    : messageStore.findBefore(room, cursor, fetch);
+        }
+        return backwardPage(rows, pageSize);
+    }
+
+    /**
+     * Rows arrive newest first; trim, flip to chronological order and point the cursor at the oldest row.
+     */
+    static MessageHistoryPage backwardPage(List<ChatMessageView> newestFirst, int pageSize) {
+        boolean hasMore = newestFirst.size() > pageSize;
+        List<ChatMessageView> page = new ArrayList<>(newestFirst.subList(0, Math.min(pageSize, newestFirst.size())));
+        Collections.reverse(page);
+        String next = page.isEmpty() ? null : MessageCursor.of(page.get(0)).encode();
+        return new MessageHistoryPage(page, next, hasMore);
+    }
+
+    /**
+     * Rows arrive oldest first; trim and point the cursor at the newest row.
+     */
+    static MessageHistoryPage forwardPage(List<ChatMessageView> oldestFirst, int pageSize) {
+        boolean hasMore = oldestFirst.size() > pageSize;
+        List<ChatMessageView> page = new ArrayList<>(oldestFirst.subList(0, Math.min(pageSize, oldestFirst.size())));
+        String next = page.isEmpty() ? null : MessageCursor.of(page.get(page.size() - 1)).encode();
+        return new MessageHistoryPage(page, next, hasMore);
+    }
+}
@@ -0,0 +1,46 @@
+package com.lmg.backend.chat;
+
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out message IDs from blocks reserved on the messages_seq sequence.
+ * Each sequence value v reserves the block (v - blockSize, v], which is the same
+ * contract Hibernate's pooled optimizer uses, so IDs from here never collide with
+ * IDs Hibernate assigns when a message is saved through the repository.
+ */
+@Component
+public class MessageIdAllocator {
+
+    private final DataFieldMaxValueIncrementer sequence;
+    private final int blockSize = ChatMessage.ID_ALLOCATION_SIZE;
+
+    // A lock rather than synchronized, so a virtual thread waiting on the sequence call doesn't pin its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next;
+    private long hi = -1;
+
+    public MessageIdAllocator(DataSource dataSource) {
+        this.sequence = new H2SequenceMaxValueIncrementer(dataSource, "messages_seq");
+    }
+
+    /**
+     * Get the next ID, hitting the database once per block.
+     */
+    public long nextId() {
+        lock.lock();
+        try {
+            if (next > hi) {
+                hi = sequence.nextLongValue();
+                next = Math.max(1, hi - blockSize + 1);
+            }
+            return next++;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.lmg.backend.chat;
+
+import java.util.List;
+
+/**
+ * Where chat messages are kept. Selected with chat.store.type:
+ * - jdbc (default): the messages table, written through MessageWriteBehindQueue
+ * - log: an append-only, memory-mapped segment log on local disk (LogMessageStore)
+ * Reads follow the keyset pagination contract of MessageHistoryService.
+ */
+public interface MessageStore {
+
+    /**
+     * Assign the message its ID and sentAt and store it. The write may complete after this returns,
+     * but the message is readable through this store from then on.
+     *
+     * @return The same message, now carrying its ID and sentAt
+     */
+    ChatMessage append(ChatMessage message);
+
+    /**
+     * The latest messages of a room, newest first.
+     */
+    List<ChatMessageView> findLatest(String room, int limit);
+
+    /**
+     * Messages of a room strictly older than the cursor, newest first.
+     */
+    List<ChatMessageView> findBefore(String room, MessageCursor cursor, int limit);
+
+    /**
+     * Messages of a room strictly newer than the cursor, oldest first.
+     */
+    List<ChatMessageView> findAfter(String room, MessageCursor cursor, int limit);
+
+    /**
+     * Messages of every room with an ID above afterId, in ID order. For rebuilding derived state such as
+     * the search index; page through by passing the last ID seen.
+     */
+    List<ChatMessageView> scan(long afterId, int limit);
+
+    /**
+     * The afterId that makes scan start at the latest count messages of every room, or 0 when no more than
+     * count are stored. Lets a rebuild skip history it would not keep anyway.
+     */
+    long idBeforeLatest(int count);
+}
@@ -0,0 +1,370 @@
+package com.lmg.backend.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind stage for chat messages.
+ * Messages get their ID and timestamp in memory so they can be broadcast right away,
+ * then a background thread flushes them to the messages table with JDBC batch inserts
+ * whenever a batch fills up or the flush interval runs out.
+ * These messages have already been broadcast, so a batch that fails is retried with backoff and then
+ * written row by row; only rows the database refuses on their own are lost, and they are logged by ID.
+ * A row whose ID is already taken counts as written only if the stored row is the same message (an earlier
+ * attempt got through); a different message under that ID is left alone and the new one is reported lost.
+ * Until its batch is written a message is also kept by ID, so history reads that go to the table can
+ * include messages clients have already seen but the table does not hold yet.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class MessageWriteBehindQueue implements SmartLifecycle {
+
+    static final String INSERT_SQL =
+            "INSERT INTO messages (id, room, content, sender, type, sent_at) VALUES (?, ?, ?, ?, ?, ?)";
+    // For a single row refused as a duplicate: whatever is stored under its ID, to compare with the message
+    private static final String SELECT_SQL = "SELECT room, content, sender, type, sent_at FROM messages WHERE id = ?";
+    // How long stop() waits for the flusher to finish its batch, before and after interrupting it
+    private static final long STOP_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final ChatMessageRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageIdAllocator idAllocator;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.persistence.write-behind.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.persistence.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${chat.persistence.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${chat.persistence.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.persistence.write-behind.offer-timeout-ms:100}")
+    private long offerTimeoutMs;
+
+    @Value("${chat.persistence.write-behind.flush-on-shutdown:true}")
+    private boolean flushOnShutdown;
+
+    @Value("${chat.persistence.write-behind.retry-attempts:3}")
+    private int retryAttempts;
+
+    @Value("${chat.persistence.write-behind.retry-backoff-ms:100}")
+    private long retryBackoffMs;
+
+    // Enqueuers hold the read lock from the running check to the offer, stop() takes the write lock to
+    // flip running, so no message can land in the queue after the final drain
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    // Queued or being written, removed once its batch is done
+    private final Map<Long, ChatMessage> unwritten = new ConcurrentHashMap<>();
+
+    private BlockingQueue<ChatMessage> queue;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private Timer batchTimer;
+    private DistributionSummary batchSizes;
+    private Counter failedMessages;
+
+    /**
+     * Assign an ID and timestamp to the message and hand it to the flusher.
+     * If the queue stays full for longer than the offer timeout the message is
+     * written on the calling thread instead, so a slow database pushes back on
+     * senders rather than dropping messages. That write is a single attempt without
+     * the flusher's retries and backoff, so the sender waits for one insert at most.
+     *
+     * @throws DataAccessException if the queue is full and the database refuses the inline write;
+     *                             the message has not been broadcast and is not stored
+     * @param message The message to persist
+     * @return The same message, now carrying its ID and sentAt
+     */
+    public ChatMessage enqueue(ChatMessage message) {
+        boolean queued = false;
+        stateLock.readLock().lock();
+        try {
+            if (!enabled || !running) {
+                return repository.save(message);
+            }
+
+            message.setId(idAllocator.nextId());
+            // Truncate to the column's microsecond precision so cursors built from this value match the stored row
+            message.setSentAt(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+            unwritten.put(message.getId(), message);
+
+            queued = queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!queued) {
+                log.warn("Write-behind queue full ({} messages), writing message {} inline", queueCapacity, message.getId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        if (!queued) {
+            writeInline(message);
+        }
+        return message;
+    }
+
+    /**
+     * Messages of a room that are not in the table yet and are newer than the cursor, oldest first.
+     */
+    public List<ChatMessageView> findUnwrittenAfter(String room, MessageCursor cursor, int limit) {
+        if (unwritten.isEmpty()) {
+            return List.of();
+        }
+        return unwritten.values().stream()
+                .filter(message -> room.equals(message.getRoom()))
+                .map(ChatMessageView::from)
+                .filter(message -> isAfter(message, cursor))
+                .sorted(Comparator.comparing(ChatMessageView::getSentAt).thenComparing(ChatMessageView::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Number of messages waiting to be written.
+     */
+    public int getPendingCount() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        batchTimer = Timer.builder("chat.messages.write.batch")
+                .description("Time to insert one batch of messages")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("chat.messages.write.batch.size")
+                .description("Messages per insert batch")
+                .register(meterRegistry);
+        failedMessages = Counter.builder("chat.messages.write.failed")
+                .description("Messages lost because the database refused them even one at a time")
+                .register(meterRegistry);
+        running = true;
+        flusher = new Thread(this::runFlusher, "chat-write-behind");
+        flusher.start();
+        log.info("Message write-behind started (batch size {}, flush interval {} ms)", batchSize, flushIntervalMs);
+    }
+
+    @Override
+    public void stop() {
+        stateLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        try {
+            flusher.join(STOP_TIMEOUT_MS);
+            if (flusher.isAlive()) {
+                // Cuts a retry backoff short; the flusher then writes its batch row by row and exits
+                log.warn("Message write-behind flusher still busy after {} ms, interrupting it", STOP_TIMEOUT_MS);
+                flusher.interrupt();
+                flusher.join(STOP_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            // Draining now would write alongside it; what is left in the queue is lost
+            log.error("Message write-behind flusher did not stop, {} queued messages are not written", queue.size());
+            return;
+        }
+
+        if (flushOnShutdown) {
+            List<ChatMessage> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            for (int from = 0; from < remaining.size(); from += batchSize) {
+                insertBatch(remaining.subList(from, Math.min(remaining.size(), from + batchSize)));
+            }
+            log.info("Message write-behind flushed {} messages on shutdown", remaining.size());
+        } else if (!queue.isEmpty()) {
+            log.warn("Message write-behind stopped with {} unwritten messages", queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop after the web server and the message broker so no new messages
+     * arrive while the last batches are being written.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void runFlusher() {
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                ChatMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Keep filling until the batch is full or the flush interval runs out
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    ChatMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                insertBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write a batch, retrying with doubling backoff; if it still fails, write its rows one by one.
+     */
+    private void insertBatch(List<ChatMessage> batch) {
+        try {
+            writeBatch(batch);
+        } finally {
+            for (ChatMessage message : batch) {
+                unwritten.remove(message.getId());
+            }
+        }
+    }
+
+    private void writeBatch(List<ChatMessage> batch) {
+        long backoffMs = retryBackoffMs;
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), MessageWriteBehindQueue::bind);
+                batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                batchSizes.record(batch.size());
+                return;
+            } catch (DataAccessException e) {
+                if (attempt >= retryAttempts) {
+                    log.error("Failed to write batch of {} messages (ids {}..{}), writing them one by one",
+                            batch.size(), batch.get(0).getId(), batch.get(batch.size() - 1).getId(), e);
+                    break;
+                }
+                log.warn("Failed to write batch of {} messages, retrying in {} ms", batch.size(), backoffMs, e);
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                // Shutting down: skip the remaining retries but still try every row
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoffMs *= 2;
+        }
+
+        for (ChatMessage message : batch) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, message));
+            } catch (DuplicateKeyException e) {
+                if (!isStored(message)) {
+                    failedMessages.increment();
+                    log.error("Lost message {} from {} in {}: its ID is taken by another message",
+                            message.getId(), message.getSender(), message.getRoom());
+                }
+            } catch (DataAccessException e) {
+                failedMessages.increment();
+                log.error("Lost message {} from {} in {}", message.getId(), message.getSender(), message.getRoom(), e);
+            }
+        }
+    }
+
+    private void writeInline(ChatMessage message) {
+        try {
+            jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, message));
+        } catch (DataAccessException e) {
+            log.warn("Rejected message {} from {}: write-behind queue full and inline write failed",
+                    message.getId(), message.getSender(), e);
+            throw e;
+        } finally {
+            unwritten.remove(message.getId());
+        }
+    }
+
+    /**
+     * Whether the row stored under the message's ID is this message, written by an earlier attempt.
+     */
+    private boolean isStored(ChatMessage message) {
+        List<Boolean> same = jdbcTemplate.query(SELECT_SQL, (rs, row) ->
+                Objects.equals(rs.getString("room"), message.getRoom())
+                        && Objects.equals(rs.getString("content"), message.getContent())
+                        && Objects.equals(rs.getString("sender"), message.getSender())
+                        && Objects.equals(rs.getString("type"), message.getType() == null ? null : message.getType().name())
+                        && Objects.equals(rs.getTimestamp("sent_at").toLocalDateTime(), message.getSentAt()),
+                message.getId());
+        return !same.isEmpty() && same.get(0);
+    }
+
+    private static boolean isAfter(ChatMessageView message, MessageCursor cursor) {
+        int bySentAt = message.getSentAt().compareTo(cursor.sentAt());
+        return bySentAt > 0 || (bySentAt == 0 && message.getId() > cursor.id());
+    }
+
+    private static void bind(PreparedStatement ps, ChatMessage message) throws SQLException {
+        ps.setLong(1, message.getId());
+        ps.setString(2, message.getRoom());
+        ps.setString(3, message.getContent());
+        ps.setString(4, message.getSender());
+        ps.setString(5, message.getType() == null ? null : message.getType().name());
+        ps.setTimestamp(6, Timestamp.valueOf(message.getSentAt()));
+    }
+}
@@ -0,0 +1,280 @@
+package com.lmg.backend.chat;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded ring buffers of the most recent messages per room, filled from the send path.
+ * Writers claim a slot with a single getAndIncrement and publish with a CAS, readers
+ * never block, so the buffers add no contention to the inbound channel.
+ * History reads are answered from here whenever the requested range is fully
+ * inside a room's buffer; otherwise the caller falls back to the message store.
+ * At most chat.history.cache.max-rooms rooms have a buffer, direct conversations included;
+ * a new room takes the place of the least recently used one (never the public room).
+ */
+@Component
+@Slf4j
+public class RecentMessageCache {
+
+    private static final Comparator<ChatMessageView> NEWEST_FIRST =
+            Comparator.comparing(ChatMessageView::getSentAt).thenComparing(ChatMessageView::getId).reversed();
+
+    private final MessageStore messageStore;
+    private final int capacity;
+    private final int maxRooms;
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RecentMessageCache(MessageStore messageStore,
+                              @Value("${chat.history.cache.capacity:512}") int capacity,
+                              @Value("${chat.history.cache.max-rooms:1000}") int maxRooms) {
+        this.messageStore = messageStore;
+        this.capacity = capacity;
+        this.maxRooms = maxRooms;
+    }
+
+    /**
+     * Load the latest public messages so reconnects right after a restart are served from memory too.
+     * Other rooms get a buffer on their first message.
+     */
+    @PostConstruct
+    void warmUp() {
+        List<ChatMessageView> latest = messageStore.findLatest(ChatRooms.PUBLIC, capacity);
+        Ring ring = new Ring(latest.size() >= capacity);
+        rings.put(ChatRooms.PUBLIC, ring);
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            ring.add(latest.get(i));
+        }
+        log.info("Recent message cache warmed with {} public messages (capacity {} per room)", latest.size(), capacity);
+    }
+
+    /**
+     * Publish a message into its room's buffer, evicting the room's oldest message once the buffer is full.
+     */
+    public void add(ChatMessageView message) {
+        Ring ring = rings.get(message.getRoom());
+        if (ring == null) {
+            if (rings.size() >= maxRooms) {
+                evictLeastRecentlyUsed();
+            }
+            // The store may already hold older messages for this room, so the buffer starts truncated
+            ring = rings.computeIfAbsent(message.getRoom(), room -> new Ring(true));
+        }
+        ring.touch();
+        ring.add(message);
+    }
+
+    /**
+     * Messages of a room strictly older than the cursor, newest first.
+     *
+     * @param room Room key
+     * @param cursor Upper bound (exclusive), or null for the latest messages
+     * @param count Maximum number of messages to return
+     * @return The messages, or null when the buffer cannot prove it holds the whole range
+     */
+    public List<ChatMessageView> findBefore(String room, MessageCursor cursor, int count) {
+        Ring ring = rings.get(room);
+        List<ChatMessageView> result = ring == null ? null : ring.touch().findBefore(cursor, count);
+        record(result);
+        return result;
+    }
+
+    /**
+     * Messages of a room strictly newer than the cursor, oldest first.
+     *
+     * @param room Room key
+     * @param cursor Lower bound (exclusive)
+     * @param count Maximum number of messages to return
+     * @return The messages, or null when the cursor points before the oldest buffered message
+     */
+    public List<ChatMessageView> findAfter(String room, MessageCursor cursor, int count) {
+        Ring ring = rings.get(room);
+        List<ChatMessageView> result = ring == null ? null : ring.touch().findAfter(cursor, count);
+        record(result);
+        return result;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getRoomCount() {
+        return rings.size();
+    }
+
+    public int getSize() {
+        return rings.values().stream().mapToInt(Ring::size).sum();
+    }
+
+    /**
+     * Rough heap footprint of the buffered messages (views, strings and slot wrappers).
+     */
+    public long getApproximateBytes() {
+        return rings.values().stream().mapToLong(ring -> ring.bytes.get()).sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Drop the buffer of the room used longest ago. A linear scan, but only when a new room arrives at the limit.
+     */
+    private void evictLeastRecentlyUsed() {
+        String eldest = null;
+        long eldestUse = Long.MAX_VALUE;
+        for (Map.Entry<String, Ring> entry : rings.entrySet()) {
+            long lastUsed = entry.getValue().lastUsed;
+            if (lastUsed < eldestUse && !ChatRooms.PUBLIC.equals(entry.getKey())) {
+                eldest = entry.getKey();
+                eldestUse = lastUsed;
+            }
+        }
+        if (eldest != null) {
+            rings.remove(eldest);
+        }
+    }
+
+    private void record(List<ChatMessageView> result) {
+        if (result == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+    }
+
+    private static int compare(ChatMessageView message, MessageCursor cursor) {
+        int bySentAt = message.getSentAt().compareTo(cursor.sentAt());
+        return bySentAt != 0 ? bySentAt : Long.compare(message.getId(), cursor.id());
+    }
+
+    private static int estimateBytes(ChatMessageView message) {
+        // Slot + view + LocalDateTime objects, plus three String headers and their UTF-16 worst case
+        int bytes = 24 + 48 + 48 + 3 * 40;
+        bytes += 2 * length(message.getContent());
+        bytes += 2 * length(message.getSender());
+        bytes += 2 * length(message.getRoom());
+        return bytes;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private record Slot(long seq, ChatMessageView message, int bytes) {
+    }
+
+    /**
+     * One room's buffer.
+     */
+    private final class Ring {
+
+        private final AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<>(capacity);
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        // System.nanoTime() of the last add or read, for picking the room to evict
+        private volatile long lastUsed = System.nanoTime();
+
+        // True once the store may hold messages that are no longer (or never were) in the buffer
+        private volatile boolean truncated;
+
+        Ring(boolean truncated) {
+            this.truncated = truncated;
+        }
+
+        Ring touch() {
+            lastUsed = System.nanoTime();
+            return this;
+        }
+
+        void add(ChatMessageView message) {
+            long seq = head.getAndIncrement();
+            if (seq >= capacity) {
+                truncated = true;
+            }
+            int index = (int) (seq % capacity);
+            Slot slot = new Slot(seq, message, estimateBytes(message));
+
+            Slot current;
+            do {
+                current = slots.get(index);
+                if (current != null && current.seq > seq) {
+                    // A writer that lapped us already filled this slot with something newer
+                    return;
+                }
+            } while (!slots.compareAndSet(index, current, slot));
+
+            bytes.addAndGet(slot.bytes - (current == null ? 0 : current.bytes));
+        }
+
+        List<ChatMessageView> findBefore(MessageCursor cursor, int count) {
+            List<ChatMessageView> snapshot = snapshotNewestFirst();
+            List<ChatMessageView> result = new ArrayList<>(Math.min(count, snapshot.size()));
+            for (ChatMessageView message : snapshot) {
+                if (cursor == null || compare(message, cursor) < 0) {
+                    result.add(message);
+                    if (result.size() == count) {
+                        break;
+                    }
+                }
+            }
+            // A short page is only complete if nothing older than the buffer exists in the store
+            return result.size() < count && truncated ? null : result;
+        }
+
+        List<ChatMessageView> findAfter(MessageCursor cursor, int count) {
+            List<ChatMessageView> snapshot = snapshotNewestFirst();
+            if (truncated && (snapshot.isEmpty() || compare(snapshot.get(snapshot.size() - 1), cursor) > 0)) {
+                return null;
+            }
+            List<ChatMessageView> result = new ArrayList<>();
+            for (int i = snapshot.size() - 1; i >= 0 && result.size() < count; i--) {
+                ChatMessageView message = snapshot.get(i);
+                if (compare(message, cursor) > 0) {
+                    result.add(message);
+                }
+            }
+            return result;
+        }
+
+        int size() {
+            return (int) Math.min(head.get(), capacity);
+        }
+
+        /**
+         * Copy out the live slots. Slots still holding an entry from a previous lap
+         * (a writer has claimed the sequence but not published yet) are skipped.
+         */
+        private List<ChatMessageView> snapshotNewestFirst() {
+            long end = head.get();
+            long start = Math.max(0, end - capacity);
+            List<ChatMessageView> snapshot = new ArrayList<>((int) (end - start));
+            for (long seq = end - 1; seq >= start; seq--) {
+                Slot slot = slots.get((int) (seq % capacity));
+                if (slot != null && slot.seq == seq) {
+                    snapshot.add(slot.message);
+                }
+            }
+            // Concurrent senders can publish slightly out of (sentAt, id) order
+            snapshot.sort(NEWEST_FIRST);
+            return snapshot;
+        }
+    }
+}
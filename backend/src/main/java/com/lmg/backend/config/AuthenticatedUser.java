@@ -0,0 +1,50 @@
+package com.lmg.backend.config;
+
+import com.lmg.backend.user.User;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * The authenticated caller, built either from verified JWT claims or from a cached user lookup.
+ * getName() is the chat username, which is also what other users see as the sender.
+ */
+@Getter
+public class AuthenticatedUser implements Principal {
+
+    /** Everyone gets this role until the app grows real roles */
+    public static final List<String> DEFAULT_ROLES = List.of("USER");
+
+    private final Long id;
+    private final String email;
+    private final String username;
+    private final List<String> roles;
+    private final List<GrantedAuthority> authorities;
+
+    public AuthenticatedUser(Long id, String email, String username, List<String> roles) {
+        this.id = id;
+        this.email = email;
+        this.username = username;
+        this.roles = List.copyOf(roles);
+        this.authorities = this.roles.stream()
+                .<GrantedAuthority>map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                .toList();
+    }
+
+    public static AuthenticatedUser from(User user) {
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getUsername(), DEFAULT_ROLES);
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthenticatedUser[" + username + "]";
+    }
+}
@@ -0,0 +1,113 @@
+package com.lmg.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.lmg.backend.chat.ChatMessage;
+import com.lmg.backend.chat.ChatMessageBinaryCodec;
+import com.lmg.backend.chat.ChatMessageView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivers chat messages in the binary format to sessions that asked for it.
+ * A client connected to the raw /ws-binary endpoint sends "x-payload-format:chat-v1" on CONNECT;
+ * from then on broadcasts reach it as application/octet-stream;format=chat-v1 WebSocket binary
+ * frames instead of JSON. SockJS sessions cannot carry binary frames and always get JSON.
+ * Only broadcasts from ChatBroadcaster carry a binary form, anything else stays JSON.
+ * Behind a broker relay the binary form does not survive the external broker; broadcasts marked
+ * with the relay header are decoded from their JSON instead, once per binary session.
+ */
+@Component
+@Slf4j
+public class BinaryPayloadInterceptor implements ChannelInterceptor {
+
+    public static final String PAYLOAD_FORMAT_HEADER = "x-payload-format";
+    public static final String BINARY_FORMAT = "chat-v1";
+
+    /** Session attribute set by the handshake of the raw (non-SockJS) endpoint */
+    public static final String RAW_WEBSOCKET_ATTRIBUTE = "rawWebSocket";
+
+    private final Set<String> binarySessions = ConcurrentHashMap.newKeySet();
+    private final ObjectReader reader;
+
+    public BinaryPayloadInterceptor(ObjectMapper objectMapper) {
+        // ChatMessageView has no creator for Jackson, the entity is read and projected instead
+        this.reader = objectMapper.readerFor(ChatMessage.class);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+
+        if (type != SimpMessageType.MESSAGE || binarySessions.isEmpty()
+                || !binarySessions.contains(SimpMessageHeaderAccessor.getSessionId(headers))) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        byte[] binary;
+        if (headers.get(ChatMessageBinaryCodec.LazyEncoding.HEADER) instanceof ChatMessageBinaryCodec.LazyEncoding lazyEncoding) {
+            binary = lazyEncoding.get();
+        } else if (accessor.getFirstNativeHeader(ChatMessageBinaryCodec.LazyEncoding.RELAY_HEADER) != null
+                && message.getPayload() instanceof byte[] json) {
+            binary = fromJson(json);
+            if (binary == null) {
+                return message;
+            }
+        } else {
+            return message;
+        }
+        accessor.setContentType(ChatMessageBinaryCodec.MIME_TYPE);
+        return MessageBuilder.createMessage(binary, accessor.getMessageHeaders());
+    }
+
+    /**
+     * Taken from the client's CONNECT, which the connect event carries in both broker modes.
+     * A broker relay's CONNECTED reply is not a CONNECT_ACK and has no CONNECT message attached.
+     */
+    @EventListener
+    public void handleSessionConnect(SessionConnectEvent event) {
+        Message<byte[]> connect = event.getMessage();
+        if (wantsBinary(connect)) {
+            binarySessions.add(SimpMessageHeaderAccessor.getSessionId(connect.getHeaders()));
+        }
+    }
+
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        binarySessions.remove(event.getSessionId());
+    }
+
+    private byte[] fromJson(byte[] json) {
+        try {
+            ChatMessage message = reader.readValue(json);
+            return ChatMessageBinaryCodec.encode(ChatMessageView.from(message));
+        } catch (IOException | IllegalArgumentException e) {
+            // Sent as JSON rather than dropped, the client can still read it
+            log.warn("Could not re-encode relayed chat message as binary: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean wantsBinary(Message<?> connect) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(connect);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        return BINARY_FORMAT.equals(accessor.getFirstNativeHeader(PAYLOAD_FORMAT_HEADER))
+                && attributes != null && Boolean.TRUE.equals(attributes.get(RAW_WEBSOCKET_ATTRIBUTE));
+    }
+}
@@ -0,0 +1,107 @@
+package com.lmg.backend.config;
+
+import com.lmg.backend.chat.MessageWriteBehindQueue;
+import com.lmg.backend.chat.RecentMessageCache;
+import com.lmg.backend.messagelog.LogMessageStore;
+import com.lmg.backend.presence.PresenceRegistry;
+import com.lmg.backend.retention.MessageArchive;
+import com.lmg.backend.search.MessageSearchIndex;
+import com.lmg.backend.unread.UnreadService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Gauges over state the chat components already track, read only when metrics are scraped.
+ * Timers and counters on the hot paths live next to the code they measure.
+ * The inbound/outbound channel pools are reported by Spring Boot's executor metrics
+ * (executor.queued and executor.active, tagged name=clientInboundChannelExecutor / clientOutboundChannelExecutor).
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatMetrics implements MeterBinder {
+
+    private final RecentMessageCache recentMessageCache;
+    private final PresenceRegistry presenceRegistry;
+    private final MessageSearchIndex searchIndex;
+    private final UnreadService unreadService;
+    private final PasswordHashingService passwordHashingService;
+    private final WebSocketMessageBrokerStats brokerStats;
+    private final SlowConsumerInterceptor slowConsumerInterceptor;
+    private final ObjectProvider<MessageWriteBehindQueue> writeBehindQueue;
+    private final ObjectProvider<LogMessageStore> logMessageStore;
+    private final ObjectProvider<MessageArchive> messageArchive;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.history.cache.size", recentMessageCache, RecentMessageCache::getSize)
+                .description("Messages held in the recent message buffers").register(registry);
+        Gauge.builder("chat.history.cache.rooms", recentMessageCache, RecentMessageCache::getRoomCount)
+                .description("Rooms with a recent message buffer").register(registry);
+        Gauge.builder("chat.history.cache.bytes", recentMessageCache, RecentMessageCache::getApproximateBytes)
+                .description("Approximate heap used by the recent message buffers").baseUnit("bytes").register(registry);
+        FunctionCounter.builder("chat.history.cache.requests", recentMessageCache, RecentMessageCache::getHits)
+                .description("History reads answered from memory").tag("result", "hit").register(registry);
+        FunctionCounter.builder("chat.history.cache.requests", recentMessageCache, RecentMessageCache::getMisses)
+                .description("History reads that went to the message store").tag("result", "miss").register(registry);
+
+        Gauge.builder("chat.search.documents", searchIndex, MessageSearchIndex::getDocumentCount)
+                .description("Messages in the search index").register(registry);
+        Gauge.builder("chat.search.terms", searchIndex, MessageSearchIndex::getTermCount)
+                .description("Distinct terms in the search index").register(registry);
+        Gauge.builder("chat.unread.pending", unreadService, UnreadService::getPendingCount)
+                .description("Room sequences and read cursors not yet written to the database").register(registry);
+
+        Gauge.builder("chat.presence.sessions", presenceRegistry, PresenceRegistry::getSessionCount)
+                .description("Authenticated STOMP sessions").register(registry);
+        Gauge.builder("chat.presence.users", presenceRegistry, PresenceRegistry::getOnlineCount)
+                .description("Users with at least one session").register(registry);
+
+        sessionGauge(registry, "websocket", SubProtocolWebSocketHandler.Stats::getWebSocketSessions);
+        sessionGauge(registry, "http-streaming", SubProtocolWebSocketHandler.Stats::getHttpStreamingSessions);
+        sessionGauge(registry, "http-polling", SubProtocolWebSocketHandler.Stats::getHttpPollingSessions);
+        closedCounter(registry, "limit-exceeded", SubProtocolWebSocketHandler.Stats::getLimitExceededSessions);
+        closedCounter(registry, "no-messages-received", SubProtocolWebSocketHandler.Stats::getNoMessagesReceivedSessions);
+        closedCounter(registry, "transport-error", SubProtocolWebSocketHandler.Stats::getTransportErrorSessions);
+
+        Gauge.builder("chat.ws.outbound.queued", slowConsumerInterceptor, SlowConsumerInterceptor::getQueuedFrames)
+                .description("Outbound frames waiting behind their session's in-flight frame").register(registry);
+        Gauge.builder("chat.ws.outbound.queue.max-depth", slowConsumerInterceptor, SlowConsumerInterceptor::getMaxQueueDepth)
+                .description("Longest outbound queue of any session").register(registry);
+        Gauge.builder("chat.ws.sessions.throttled", slowConsumerInterceptor, SlowConsumerInterceptor::getThrottledSessionCount)
+                .description("Sessions whose outbound queue is over the limit").register(registry);
+
+        Gauge.builder("auth.password.hash.queued", passwordHashingService, PasswordHashingService::getQueueSize)
+                .description("Password hashes waiting for a hashing thread").register(registry);
+        Gauge.builder("auth.password.hash.active", passwordHashingService, PasswordHashingService::getActiveCount)
+                .description("Password hashes in progress").register(registry);
+
+        writeBehindQueue.ifAvailable(queue -> Gauge.builder("chat.messages.write-behind.pending", queue,
+                MessageWriteBehindQueue::getPendingCount)
+                .description("Messages waiting to be written to the database").register(registry));
+        logMessageStore.ifAvailable(store -> Gauge.builder("chat.messages.log.segments", store,
+                LogMessageStore::getSegmentCount)
+                .description("Segment files in the message log").register(registry));
+        messageArchive.ifAvailable(archive -> Gauge.builder("chat.retention.archive.files", archive,
+                MessageArchive::getFileCount)
+                .description("Per-room, per-day files in the message archive").register(registry));
+    }
+
+    private void sessionGauge(MeterRegistry registry, String transport, ToDoubleFunction<SubProtocolWebSocketHandler.Stats> value) {
+        Gauge.builder("chat.ws.sessions", brokerStats, stats -> value.applyAsDouble(stats.getWebSocketSessionStats()))
+                .description("Open WebSocket/SockJS sessions").tag("transport", transport).register(registry);
+    }
+
+    private void closedCounter(MeterRegistry registry, String reason, ToDoubleFunction<SubProtocolWebSocketHandler.Stats> value) {
+        FunctionCounter.builder("chat.ws.sessions.closed", brokerStats, stats -> value.applyAsDouble(stats.getWebSocketSessionStats()))
+                .description("Sessions closed by the server").tag("reason", reason).register(registry);
+    }
+}
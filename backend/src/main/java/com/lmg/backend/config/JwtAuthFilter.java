@@ -8,8 +8,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -19,8 +17,7 @@ import java.io.IOException;
 @RequiredArgsConstructor
 public class JwtAuthFilter extends OncePerRequestFilter {
 
-    private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final JwtAuthenticator jwtAuthenticator;
 
     @Override
     protected void doFilterInternal(
@@ -29,45 +26,20 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             @NonNull FilterChain filterChain
     ) throws ServletException, IOException {
 
-        // 1. Extract Authorization header
-        final String authHeader = request.getHeader("Authorization");
-        final String jwt;
-        final String userEmail;
+        // 1. Skip if the user is already authenticated
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
 
-        // 2. Check if header exists and starts with "Bearer "
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            filterChain.doFilter(request, response);
-            return;
-        }
-
-        // 3. Extract token (remove "Bearer " prefix)
-        jwt = authHeader.substring(7);
-
-        // 4. Extract email from token
-        userEmail = jwtService.extractEmail(jwt);
-
-        // 5. If we have an email and user is not already authenticated
-        if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-
-            // 6. Load user from database
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
-
-            // 7. Validate token
-            if (jwtService.validateToken(jwt, userDetails.getUsername())) {
-
-                // 8. Create authentication token
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails,
-                        null,
-                        userDetails.getAuthorities()
-                );
+            // 2. Verify the "Bearer " token from the Authorization header (null if missing or invalid)
+            UsernamePasswordAuthenticationToken authToken =
+                    jwtAuthenticator.authenticateHeader(request.getHeader("Authorization"));
 
-                // 9. Set authentication in security context
+            // 3. Set authentication in security context
+            if (authToken != null) {
                 SecurityContextHolder.getContext().setAuthentication(authToken);
             }
         }
 
-        // 10. Continue with the request
+        // 4. Continue with the request; security rejects it later if it is still anonymous
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.lmg.backend.config;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns a bearer token into an Authentication.
+ * Shared by the HTTP filter and the STOMP CONNECT interceptor so both
+ * authenticate the same way.
+ */
+@Component
+@RequiredArgsConstructor
+public class JwtAuthenticator {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final JwtService jwtService;
+    private final UserLookupCache userLookupCache;
+
+    // When true the principal comes straight from the verified token claims, no user lookup
+    @Value("${jwt.stateless:true}")
+    private boolean stateless;
+
+    /**
+     * Authenticate an "Authorization" header value.
+     *
+     * @return The authentication, or null if the header is missing, not a bearer token or not valid
+     */
+    public UsernamePasswordAuthenticationToken authenticateHeader(String authHeader) {
+        if (authHeader == null || !authHeader.startsWith(BEARER_PREFIX)) {
+            return null;
+        }
+        return authenticate(authHeader.substring(BEARER_PREFIX.length()));
+    }
+
+    /**
+     * Authenticate a raw token.
+     *
+     * @return The authentication, or null if the token is not valid or its user no longer exists
+     */
+    public UsernamePasswordAuthenticationToken authenticate(String token) {
+        // Parse and verify the token once (cached), then read the email from the claims
+        final Claims claims;
+        try {
+            claims = jwtService.parseToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        String email = claims.getSubject();
+        if (email == null) {
+            return null;
+        }
+
+        // Build the user from the token, or load it (cached) for older tokens / stateful mode
+        AuthenticatedUser user = stateless ? jwtService.toAuthenticatedUser(claims) : null;
+        if (user == null) {
+            user = userLookupCache.findByEmail(email);
+        }
+        if (user == null || !jwtService.isTokenValid(claims, user.getEmail())) {
+            return null;
+        }
+        return new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+    }
+}
@@ -1,27 +1,76 @@
 package com.lmg.backend.config;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Service
 public class JwtService {
 
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String USERNAME_CLAIM = "username";
+    private static final String ROLES_CLAIM = "roles";
+
     @Value("${jwt.secret}")
     private String secretKey;
 
     @Value("${jwt.expiration}")
     private long jwtExpiration;
 
+    @Value("${jwt.claims-cache.max-size:10000}")
+    private int claimsCacheMaxSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Built once; decoding the secret and building a parser per call showed up on every request
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // Verified claims keyed by the raw token, so repeat requests skip the HMAC check
+    private final Map<String, CachedClaims> claimsCache = new ConcurrentHashMap<>();
+
+    // Only the HMAC check is timed; cache hits are too cheap to be worth a clock read
+    private Timer verifyTimer;
+    private Counter cacheHits;
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        parser = Jwts.parser()                            // NEW API: parser() instead of parserBuilder()
+                .verifyWith(signingKey)                   // NEW API: verifyWith() instead of setSigningKey()
+                .build();
+        verifyTimer = Timer.builder("auth.jwt.verify")
+                .description("Time to verify and parse a token not in the claims cache")
+                .register(meterRegistry);
+        cacheHits = Counter.builder("auth.jwt.cache.hits")
+                .description("Tokens answered from the claims cache")
+                .register(meterRegistry);
+        Gauge.builder("auth.jwt.cache.size", claimsCache, Map::size)
+                .description("Verified tokens in the claims cache")
+                .register(meterRegistry);
+    }
+
     /**
      * Generate JWT token for a user
      */
@@ -30,6 +79,38 @@ public class JwtService {
         return createToken(claims, email);
     }
 
+    /**
+     * Generate JWT token carrying the user's ID, username and roles,
+     * so requests can be authenticated from the token alone (see jwt.stateless)
+     */
+    public String generateToken(AuthenticatedUser user) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, user.getId());
+        claims.put(USERNAME_CLAIM, user.getUsername());
+        claims.put(ROLES_CLAIM, user.getRoles());
+        return createToken(claims, user.getEmail());
+    }
+
+    /**
+     * Build the principal from verified claims.
+     *
+     * @return The user, or null for tokens issued without the user claims
+     */
+    public AuthenticatedUser toAuthenticatedUser(Claims claims) {
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        String username = claims.get(USERNAME_CLAIM, String.class);
+        if (userId == null || username == null) {
+            return null;
+        }
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        return new AuthenticatedUser(
+                userId.longValue(),
+                claims.getSubject(),
+                username,
+                roles == null ? AuthenticatedUser.DEFAULT_ROLES : roles.stream().map(String::valueOf).toList()
+        );
+    }
+
     /**
      * Create the actual JWT token
      */
@@ -47,8 +128,7 @@ public class JwtService {
      * Get the signing key from the secret
      */
     private SecretKey getSigningKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signingKey;
     }
 
     /**
@@ -77,25 +157,77 @@ public class JwtService {
      * Extract all claims from token
      */
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()                              // NEW API: parser() instead of parserBuilder()
-                .verifyWith(getSigningKey())              // NEW API: verifyWith() instead of setSigningKey()
-                .build()
+        return parseToken(token);
+    }
+
+    /**
+     * Verify the token and return its claims.
+     * Verified claims are cached until the token expires, so a bearer token
+     * that is sent again is not re-parsed or re-verified.
+     *
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, forged or expired
+     */
+    public Claims parseToken(String token) {
+        CachedClaims cached = claimsCache.get(token);
+        if (cached != null) {
+            if (cached.expiresAtMillis() > System.currentTimeMillis()) {
+                cacheHits.increment();
+                return cached.claims();
+            }
+            // Expired: drop it and let the parser raise the usual ExpiredJwtException
+            claimsCache.remove(token, cached);
+        }
+
+        long start = System.nanoTime();
+        Claims claims = parser
                 .parseSignedClaims(token)                 // NEW API: parseSignedClaims() instead of parseClaimsJws()
                 .getPayload();                            // NEW API: getPayload() instead of getBody()
+        verifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        Date expiration = claims.getExpiration();
+        if (expiration != null) {
+            if (claimsCache.size() >= claimsCacheMaxSize) {
+                evictClaims();
+            }
+            claimsCache.put(token, new CachedClaims(claims, expiration.getTime()));
+        }
+        return claims;
     }
 
     /**
-     * Check if token is expired
+     * Make room in the claims cache: drop expired tokens first, then the tokens closest
+     * to expiring until the cache is back under 90% of its limit.
      */
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private void evictClaims() {
+        long now = System.currentTimeMillis();
+        claimsCache.values().removeIf(cached -> cached.expiresAtMillis() <= now);
+
+        int excess = claimsCache.size() - claimsCacheMaxSize * 9 / 10;
+        if (excess <= 0) {
+            return;
+        }
+        claimsCache.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().expiresAtMillis()))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(claimsCache::remove);
     }
 
     /**
      * Validate token
      */
     public Boolean validateToken(String token, String email) {
-        final String tokenEmail = extractEmail(token);
-        return (tokenEmail.equals(email) && !isTokenExpired(token));
+        return isTokenValid(parseToken(token), email);
+    }
+
+    /**
+     * Validate already parsed claims, so callers that parsed the token once don't parse it again
+     */
+    public boolean isTokenValid(Claims claims, String email) {
+        return claims.getSubject().equals(email) && claims.getExpiration().after(new Date());
+    }
+
+    private record CachedClaims(Claims claims, long expiresAtMillis) {
     }
 }
\ No newline at end of file
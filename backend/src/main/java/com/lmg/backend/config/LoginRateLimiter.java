@@ -0,0 +1,114 @@
+package com.lmg.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket limits for the password endpoints, one bucket per client IP and one per account.
+ * The IP bucket slows down a single client hammering many accounts, the account bucket slows
+ * down many clients guessing one account's password.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private final Map<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> accountBuckets = new ConcurrentHashMap<>();
+
+    @Value("${security.rate-limit.per-ip.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${security.rate-limit.per-ip.refill-per-minute:20}")
+    private int ipRefillPerMinute;
+
+    @Value("${security.rate-limit.per-account.capacity:5}")
+    private int accountCapacity;
+
+    @Value("${security.rate-limit.per-account.refill-per-minute:5}")
+    private int accountRefillPerMinute;
+
+    @Value("${security.rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    /**
+     * Take one token from the client's IP bucket and, when given, the account's bucket.
+     *
+     * @param ip Client address
+     * @param account Email or username being tried, may be null
+     * @return 0 if the attempt may go ahead, otherwise the seconds until it could be retried
+     */
+    public long tryAcquire(String ip, String account) {
+        long now = System.nanoTime();
+        long wait = acquire(ipBuckets, ip, ipCapacity, ipRefillPerMinute, now);
+        if (wait == 0 && account != null) {
+            wait = acquire(accountBuckets, account.toLowerCase(Locale.ROOT), accountCapacity, accountRefillPerMinute, now);
+        }
+        return wait == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait));
+    }
+
+    private long acquire(Map<String, TokenBucket> buckets, String key, int capacity, int refillPerMinute, long now) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) {
+                evictIdle(buckets, now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(capacity, refillPerMinute, now));
+        }
+        return bucket.tryAcquire(now);
+    }
+
+    /**
+     * Full buckets carry no state worth keeping, drop them first; if that is not enough, drop arbitrary ones.
+     */
+    private void evictIdle(Map<String, TokenBucket> buckets, long now) {
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+        Iterator<String> keys = buckets.keySet().iterator();
+        int target = maxKeys * 9 / 10;
+        while (buckets.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    static final class TokenBucket {
+
+        private final int capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity, int refillPerMinute, long now) {
+            this.capacity = capacity;
+            this.tokensPerNano = refillPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise the nanoseconds until the next token
+         */
+        synchronized long tryAcquire(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.lmg.backend.config;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in batching of outbound MESSAGE frames.
+ * A client that sends the "x-coalesce:true" header on CONNECT gets the messages of each
+ * subscription collected for up to chat.ws.coalesce.window-ms (or until max-messages are
+ * waiting) and delivered as one frame whose body is a JSON array of the individual payloads.
+ * Sessions that do not opt in are untouched.
+ * A batch is taken and handed to the channel under its session's lock, whether it filled up on the
+ * sending thread or its window ran out on the scheduler, so batches of a subscription go out in order.
+ * A disconnect drops the session's pending messages along with its buffer.
+ */
+@Component
+@Slf4j
+public class OutboundCoalescingInterceptor implements ChannelInterceptor {
+
+    public static final String COALESCE_HEADER = "x-coalesce";
+    public static final String BATCH_SIZE_HEADER = "x-batch-size";
+
+    // Marks a frame this interceptor built, so it is not buffered a second time
+    private static final String COALESCED = "coalesced";
+
+    private final boolean enabled;
+    private final long windowMs;
+    private final int maxMessages;
+
+    private final Map<String, SessionBuffer> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    // The client outbound channel, taken from the first frame buffered since it cannot be injected into its own interceptor
+    private volatile MessageChannel channel;
+
+    public OutboundCoalescingInterceptor(@Value("${chat.ws.coalesce.enabled:true}") boolean enabled,
+                                         @Value("${chat.ws.coalesce.window-ms:10}") long windowMs,
+                                         @Value("${chat.ws.coalesce.max-messages:50}") int maxMessages) {
+        this.enabled = enabled;
+        this.windowMs = windowMs;
+        this.maxMessages = maxMessages;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-coalesce");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) {
+            return message;
+        }
+        // Static header reads, this runs for every outbound frame and must not copy headers
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+
+        if (type != SimpMessageType.MESSAGE || headers.containsKey(COALESCED)
+                || !(message.getPayload() instanceof byte[]) || !isJson(headers)) {
+            return message;
+        }
+        SessionBuffer buffer = sessions.get(SimpMessageHeaderAccessor.getSessionId(headers));
+        if (buffer == null) {
+            return message;
+        }
+
+        this.channel = channel;
+        @SuppressWarnings("unchecked")
+        Message<byte[]> bytes = (Message<byte[]>) message;
+        buffer.add(SimpMessageHeaderAccessor.getSubscriptionId(headers), bytes);
+        // Held back, it goes out with the rest of its batch
+        return null;
+    }
+
+    /**
+     * The client asks to opt in on its CONNECT frame. Read from the connect event rather than the
+     * CONNECTED reply: a broker relay answers with a plain STOMP CONNECTED frame that neither has
+     * the CONNECT_ACK message type nor carries the client's CONNECT.
+     */
+    @EventListener
+    public void handleSessionConnect(SessionConnectEvent event) {
+        Message<byte[]> connect = event.getMessage();
+        if (enabled && "true".equals(SimpMessageHeaderAccessor.wrap(connect).getFirstNativeHeader(COALESCE_HEADER))) {
+            sessions.put(SimpMessageHeaderAccessor.getSessionId(connect.getHeaders()), new SessionBuffer());
+        }
+    }
+
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        SessionBuffer buffer = sessions.remove(event.getSessionId());
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    int getSessionCount() {
+        return sessions.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void send(List<Message<byte[]>> batch) {
+        try {
+            channel.send(combine(batch));
+        } catch (RuntimeException e) {
+            log.warn("Failed to send a coalesced batch of {} messages", batch.size(), e);
+        }
+    }
+
+    private static boolean isJson(MessageHeaders headers) {
+        // Binary frames cannot be joined into an array and go out on their own
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        return contentType == null || MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(
+                contentType instanceof MimeType mimeType ? mimeType : MimeTypeUtils.parseMimeType(contentType.toString()));
+    }
+
+    /**
+     * One frame for the whole batch: the headers (destination, subscription, session) of the
+     * first message and the payloads joined into a JSON array.
+     */
+    static Message<byte[]> combine(List<Message<byte[]>> batch) {
+        int size = 2 + batch.size();
+        for (Message<byte[]> message : batch) {
+            size += message.getPayload().length;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(size);
+        body.write('[');
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            body.writeBytes(batch.get(i).getPayload());
+        }
+        body.write(']');
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(batch.get(0));
+        accessor.setHeader(COALESCED, Boolean.TRUE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setNativeHeader(BATCH_SIZE_HEADER, Integer.toString(batch.size()));
+        return MessageBuilder.createMessage(body.toByteArray(), accessor.getMessageHeaders());
+    }
+
+    /**
+     * Pending messages of one session, per subscription. Batches are sent while holding this buffer's lock.
+     */
+    private final class SessionBuffer {
+
+        private final Map<String, List<Message<byte[]>>> pending = new HashMap<>();
+        private boolean closed;
+
+        /**
+         * Queue a message, sending the batch right away if it is now full, or scheduling its flush
+         * if the message starts a new batch.
+         */
+        synchronized void add(String subscriptionId, Message<byte[]> message) {
+            if (closed) {
+                return;
+            }
+            List<Message<byte[]>> batch = pending.computeIfAbsent(subscriptionId, id -> new ArrayList<>());
+            batch.add(message);
+            if (batch.size() >= maxMessages) {
+                send(pending.remove(subscriptionId));
+            } else if (batch.size() == 1) {
+                scheduler.schedule(() -> flush(subscriptionId), windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Send the subscription's batch once its window ran out, unless it already went out full.
+         */
+        synchronized void flush(String subscriptionId) {
+            List<Message<byte[]>> batch = pending.remove(subscriptionId);
+            if (batch != null && !closed) {
+                send(batch);
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.lmg.backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds what a slow client can make the server hold for it.
+ * Each session has at most one outbound frame in the hands of the outbound channel's pool at a
+ * time; frames arriving meanwhile wait in a per-session queue of up to max-queued-frames and are
+ * handed on one by one as each write completes. When the queue overflows, chat.ws.slow-consumer.policy
+ * decides what happens:
+ * - drop-oldest: the oldest queued MESSAGE frame is discarded
+ * - resync: every queued MESSAGE frame is replaced by one marker per subscription (header
+ *   "x-resync:true", body {"resync":true}); the client reloads history from its last cursor
+ * - disconnect: the session is closed
+ * A session whose in-flight frame has not completed within stall-timeout-ms is closed whatever the policy,
+ * since with a single frame in flight Spring's own send-time-limit check never trips.
+ * Must be the last outbound interceptor, so it queues frames exactly as they will be written.
+ */
+@Component
+@Slf4j
+public class SlowConsumerInterceptor implements ExecutorChannelInterceptor {
+
+    public enum Policy {
+        DROP_OLDEST, RESYNC, DISCONNECT
+    }
+
+    public static final String RESYNC_HEADER = "x-resync";
+
+    private static final byte[] RESYNC_PAYLOAD = "{\"resync\":true}".getBytes(StandardCharsets.UTF_8);
+
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final Policy policy;
+    private final int maxQueuedFrames;
+    private final long stallTimeoutNanos;
+
+    private final Map<String, SessionQueue> sessions = new ConcurrentHashMap<>();
+    private final Counter droppedFrames;
+    private final Counter throttledSessions;
+    private final Counter stalledSessions;
+    // The outbound channel's one subscriber, kept for frames the pool refused
+    private volatile MessageHandler outboundHandler;
+
+    public SlowConsumerInterceptor(WebSocketSessionRegistry sessionRegistry, MeterRegistry meterRegistry,
+                                   @Value("${chat.ws.slow-consumer.policy:resync}") Policy policy,
+                                   @Value("${chat.ws.slow-consumer.max-queued-frames:256}") int maxQueuedFrames,
+                                   @Value("${chat.ws.slow-consumer.stall-timeout-ms:10000}") long stallTimeoutMs) {
+        this.sessionRegistry = sessionRegistry;
+        this.policy = policy;
+        this.maxQueuedFrames = maxQueuedFrames;
+        this.stallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(stallTimeoutMs);
+        this.droppedFrames = Counter.builder("chat.ws.outbound.dropped")
+                .description("MESSAGE frames discarded because their session could not keep up")
+                .tag("policy", policyName(policy))
+                .register(meterRegistry);
+        this.throttledSessions = slowConsumerCounter(meterRegistry, policyName(policy));
+        this.stalledSessions = slowConsumerCounter(meterRegistry, "stalled");
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null) {
+            return message;
+        }
+        SessionQueue queue = sessions.get(sessionId);
+        if (queue == null) {
+            return message;
+        }
+
+        long now = System.nanoTime();
+        boolean stalled = false;
+        boolean overflowed = false;
+        synchronized (queue) {
+            if (!queue.inFlight) {
+                queue.admit(now);
+                return message;
+            }
+            queue.frames.add(message);
+            if (now - queue.inFlightSince > stallTimeoutNanos) {
+                stalled = true;
+            } else if (queue.frames.size() > maxQueuedFrames) {
+                overflowed = true;
+                if (!queue.throttled) {
+                    queue.throttled = true;
+                    throttledSessions.increment();
+                }
+                if (policy == Policy.DROP_OLDEST) {
+                    droppedFrames.increment(queue.dropOldest());
+                } else if (policy == Policy.RESYNC) {
+                    droppedFrames.increment(queue.collapse());
+                }
+            }
+        }
+
+        if ((stalled || (overflowed && policy == Policy.DISCONNECT)) && sessions.remove(sessionId, queue)) {
+            if (stalled) {
+                stalledSessions.increment();
+            }
+            log.info("Closing slow WebSocket session {} ({})", sessionId, stalled ? "write stalled" : "outbound queue full");
+            sessionRegistry.close(sessionId, CloseStatus.SESSION_NOT_RELIABLE);
+        }
+        // Queued (or discarded), it is sent when the frames ahead of it have been written
+        return null;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        // The pool rejected the frame, so afterMessageHandled will never release the session
+        if (ex != null) {
+            release(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()), channel, outboundHandler);
+        }
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        outboundHandler = handler;
+        release(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()), channel, handler);
+    }
+
+    /**
+     * Track the session from the client's CONNECT. The CONNECTED reply is then its first frame,
+     * whether the simple broker (CONNECT_ACK) or a broker relay (a STOMP CONNECTED frame) sends it.
+     */
+    @EventListener
+    public void handleSessionConnect(SessionConnectEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) {
+            sessions.put(sessionId, new SessionQueue());
+        }
+    }
+
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    /**
+     * Frames waiting across all sessions, not counting the ones in flight.
+     */
+    public int getQueuedFrames() {
+        int total = 0;
+        for (SessionQueue queue : sessions.values()) {
+            total += queue.size();
+        }
+        return total;
+    }
+
+    /**
+     * Longest queue of any one session.
+     */
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (SessionQueue queue : sessions.values()) {
+            max = Math.max(max, queue.size());
+        }
+        return max;
+    }
+
+    /**
+     * Sessions whose queue has overflowed and not yet drained.
+     */
+    public int getThrottledSessionCount() {
+        int count = 0;
+        for (SessionQueue queue : sessions.values()) {
+            if (queue.isThrottled()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The session's in-flight frame is done: pass its next queued frame to the pool.
+     * Runs on the thread that wrote the previous frame, which is not held for the next one
+     * unless the pool refuses it.
+     */
+    private void release(String sessionId, MessageChannel channel, MessageHandler handler) {
+        SessionQueue queue = sessionId == null ? null : sessions.get(sessionId);
+        if (queue == null) {
+            return;
+        }
+        if (handler == null) {
+            // Nothing has been written yet, so there is nobody to hand the queue to
+            queue.clear();
+            return;
+        }
+        Executor executor = channel instanceof ExecutorSubscribableChannel subscribable ? subscribable.getExecutor() : null;
+        Message<?> next;
+        while ((next = queue.next()) != null) {
+            Message<?> frame = next;
+            if (executor != null) {
+                try {
+                    executor.execute(() -> {
+                        deliver(frame, handler);
+                        release(sessionId, channel, handler);
+                    });
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // Pool saturated, write it from here instead
+                }
+            }
+            deliver(frame, handler);
+        }
+    }
+
+    private static void deliver(Message<?> frame, MessageHandler handler) {
+        try {
+            handler.handleMessage(frame);
+        } catch (RuntimeException e) {
+            log.debug("Failed to deliver a queued frame", e);
+        }
+    }
+
+    private static boolean isDroppable(Message<?> frame) {
+        MessageHeaders headers = frame.getHeaders();
+        return SimpMessageHeaderAccessor.getMessageType(headers) == SimpMessageType.MESSAGE
+                && SimpMessageHeaderAccessor.getFirstNativeHeader(RESYNC_HEADER, headers) == null;
+    }
+
+    /**
+     * Replacement for the dropped frames of one subscription, with that subscription's headers.
+     */
+    static Message<byte[]> resyncMarker(Message<?> dropped) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(dropped);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.removeNativeHeader(OutboundCoalescingInterceptor.BATCH_SIZE_HEADER);
+        accessor.setNativeHeader(RESYNC_HEADER, "true");
+        return MessageBuilder.createMessage(RESYNC_PAYLOAD, accessor.getMessageHeaders());
+    }
+
+    private static String policyName(Policy policy) {
+        return policy.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    private static Counter slowConsumerCounter(MeterRegistry meterRegistry, String action) {
+        return Counter.builder("chat.ws.slow-consumers")
+                .description("Sessions whose outbound queue overflowed, by what was done about it")
+                .tag("action", action)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Outbound frames of one session waiting behind its in-flight frame. Guarded by its own monitor.
+     */
+    private static final class SessionQueue {
+
+        private final ArrayDeque<Message<?>> frames = new ArrayDeque<>();
+        private boolean inFlight;
+        private long inFlightSince;
+        // Overflowed since the queue was last empty, so each episode is counted once
+        private boolean throttled;
+
+        void admit(long now) {
+            inFlight = true;
+            inFlightSince = now;
+        }
+
+        /**
+         * Take the next frame to send, or mark the session idle if there is none.
+         */
+        synchronized Message<?> next() {
+            Message<?> frame = frames.poll();
+            if (frame == null) {
+                inFlight = false;
+                throttled = false;
+            } else {
+                inFlightSince = System.nanoTime();
+            }
+            return frame;
+        }
+
+        /**
+         * @return Number of frames dropped
+         */
+        int dropOldest() {
+            for (Iterator<Message<?>> it = frames.iterator(); it.hasNext(); ) {
+                if (isDroppable(it.next())) {
+                    it.remove();
+                    return 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Replace the queued MESSAGE frames with one resync marker per subscription, after the other frames.
+         *
+         * @return Number of frames dropped
+         */
+        int collapse() {
+            Map<String, Message<?>> markers = new LinkedHashMap<>();
+            int dropped = 0;
+            for (Iterator<Message<?>> it = frames.iterator(); it.hasNext(); ) {
+                Message<?> frame = it.next();
+                MessageHeaders headers = frame.getHeaders();
+                if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+                    continue;
+                }
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                if (isDroppable(frame)) {
+                    markers.computeIfAbsent(subscriptionId, id -> resyncMarker(frame));
+                    dropped++;
+                } else {
+                    markers.putIfAbsent(subscriptionId, frame);
+                }
+                it.remove();
+            }
+            frames.addAll(markers.values());
+            return dropped;
+        }
+
+        synchronized void clear() {
+            frames.clear();
+            inFlight = false;
+            throttled = false;
+        }
+
+        synchronized int size() {
+            return frames.size();
+        }
+
+        synchronized boolean isThrottled() {
+            return throttled;
+        }
+    }
+}
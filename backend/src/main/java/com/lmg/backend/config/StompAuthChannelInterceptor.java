@@ -0,0 +1,46 @@
+package com.lmg.backend.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+/**
+ * Authenticates STOMP sessions on CONNECT using the JWT in the "Authorization" native header.
+ * The resulting principal is stored on the session by Spring, so every later frame of the
+ * session carries it without parsing the token again.
+ */
+@Component
+@RequiredArgsConstructor
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    private final JwtAuthenticator jwtAuthenticator;
+
+    @Value("${chat.ws.require-auth:true}")
+    private boolean requireAuth;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.CONNECT) {
+            return message;
+        }
+
+        UsernamePasswordAuthenticationToken authentication =
+                jwtAuthenticator.authenticateHeader(accessor.getFirstNativeHeader("Authorization"));
+        if (authentication != null) {
+            accessor.setUser(authentication);
+        } else if (requireAuth) {
+            // Sent back to the client as a STOMP ERROR frame and the session is closed
+            throw new BadCredentialsException("Missing or invalid token on CONNECT");
+        }
+        return message;
+    }
+}
@@ -0,0 +1,26 @@
+package com.lmg.backend.config;
+
+import com.lmg.backend.user.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener on User that keeps UserLookupCache in sync with the users table.
+ * The cache is looked up lazily because Hibernate creates this listener while
+ * the EntityManagerFactory (which the cache depends on) is still being built.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserCacheEvictionListener {
+
+    private final ObjectProvider<UserLookupCache> userLookupCache;
+
+    @PostUpdate
+    @PostRemove
+    public void onUserChanged(User user) {
+        userLookupCache.ifAvailable(cache -> cache.evict(user.getId()));
+    }
+}
@@ -0,0 +1,77 @@
+package com.lmg.backend.config;
+
+import com.lmg.backend.user.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, TTL-based cache of users looked up by email during authentication.
+ * Entries are dropped when the user row changes (see UserCacheEvictionListener),
+ * the TTL only bounds how long a change made outside JPA can go unnoticed.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserLookupCache {
+
+    private final UserRepository userRepository;
+
+    @Value("${security.user-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${security.user-cache.max-size:10000}")
+    private int maxSize;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Get the user for an email, loading it from the database on a miss.
+     *
+     * @return The user, or null if no user has this email
+     */
+    public AuthenticatedUser findByEmail(String email) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(email);
+        if (entry != null && entry.expiresAtMillis() > now) {
+            return entry.user();
+        }
+
+        AuthenticatedUser user = userRepository.findByEmail(email)
+                .map(AuthenticatedUser::from)
+                .orElse(null);
+        if (user != null) {
+            if (entries.size() >= maxSize) {
+                evict(now);
+            }
+            entries.put(email, new Entry(user, now + ttlSeconds * 1000));
+        } else {
+            entries.remove(email);
+        }
+        return user;
+    }
+
+    /**
+     * Forget a user, whatever email it was cached under.
+     */
+    public void evict(Long userId) {
+        entries.values().removeIf(entry -> entry.user().getId().equals(userId));
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.expiresAtMillis() <= now);
+
+        Iterator<String> emails = entries.keySet().iterator();
+        int target = maxSize * 9 / 10;
+        while (entries.size() > target && emails.hasNext()) {
+            emails.next();
+            emails.remove();
+        }
+    }
+
+    private record Entry(AuthenticatedUser user, long expiresAtMillis) {
+    }
+}
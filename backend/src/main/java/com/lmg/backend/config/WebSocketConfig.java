@@ -1,10 +1,28 @@
 package com.lmg.backend.config;
 
+import com.lmg.backend.chat.ChatMessageBinaryConverter;
+import com.lmg.backend.room.RoomSubscriptionInterceptor;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * WebSocket configuration for real-time messaging.
@@ -13,28 +31,247 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
  */
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final String[] ALLOWED_ORIGINS =
+            {"http://localhost:3000", "https://messages-vs.vercel.app", "https://messagesvs-production.up.railway.app"};
+
+    // Server-to-server topics of relay mode, which RoomSubscriptionInterceptor keeps clients away from
+    public static final String USER_DESTINATION_BROADCAST = "/topic/unresolved-user-destination";
+    public static final String USER_REGISTRY_BROADCAST = "/topic/user-registry";
+
+    private final StompAuthChannelInterceptor stompAuthChannelInterceptor;
+    private final RoomSubscriptionInterceptor roomSubscriptionInterceptor;
+    private final BinaryPayloadInterceptor binaryPayloadInterceptor;
+    private final OutboundCoalescingInterceptor outboundCoalescingInterceptor;
+    private final SlowConsumerInterceptor slowConsumerInterceptor;
+    private final WebSocketSessionRegistry sessionRegistry;
+
+    // "simple" keeps the in-memory broker (single node), "relay" forwards to an external STOMP broker
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.client-login:guest}")
+    private String relayClientLogin;
+
+    @Value("${chat.broker.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+
+    @Value("${chat.broker.relay.system-login:guest}")
+    private String relaySystemLogin;
+
+    @Value("${chat.broker.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+
+    // Run inbound/outbound message handling on virtual threads (Java 21+) instead of the pools below
+    @Value("${chat.ws.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Value("${chat.ws.inbound.core-pool-size:16}")
+    private int inboundCorePoolSize;
+
+    @Value("${chat.ws.inbound.max-pool-size:64}")
+    private int inboundMaxPoolSize;
+
+    @Value("${chat.ws.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${chat.ws.outbound.core-pool-size:16}")
+    private int outboundCorePoolSize;
+
+    @Value("${chat.ws.outbound.max-pool-size:64}")
+    private int outboundMaxPoolSize;
+
+    @Value("${chat.ws.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    @Value("${chat.ws.pool-keep-alive-seconds:60}")
+    private int poolKeepAliveSeconds;
+
+    @Value("${chat.ws.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.ws.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.ws.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${chat.ws.time-to-first-message-ms:60000}")
+    private int timeToFirstMessageMs;
+
+    // STOMP heart-beat the simple broker offers: how often it sends, how often it expects the client to
+    @Value("${chat.ws.heartbeat.server-ms:10000}")
+    private long heartbeatServerMs;
+
+    @Value("${chat.ws.heartbeat.client-ms:10000}")
+    private long heartbeatClientMs;
+
+    @Value("${chat.ws.sockjs.heartbeat-ms:25000}")
+    private long sockJsHeartbeatMs;
+
+    @Value("${chat.ws.sockjs.disconnect-delay-ms:5000}")
+    private long sockJsDisconnectDelayMs;
+
+    private ThreadPoolTaskScheduler heartbeatScheduler;
+
     /**
      * Register STOMP endpoints that clients will use to connect to the WebSocket server.
      * Includes SockJS fallback for browsers that don't support WebSocket.
      * Configures CORS to allow connections from frontend applications.
+     * SockJS sends its own heartbeat frame when idle, and drops a session whose client has not
+     * reconnected (streaming/polling) within the disconnect delay.
      */
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
-                .setAllowedOrigins("http://localhost:3000", "https://messages-vs.vercel.app", "https://messagesvs-production.up.railway.app")
-                .withSockJS();
+                .setAllowedOrigins(ALLOWED_ORIGINS)
+                .withSockJS()
+                .setHeartbeatTime(sockJsHeartbeatMs)
+                .setDisconnectDelay(sockJsDisconnectDelayMs);
+        // Plain WebSocket endpoint for clients that want binary frames (SockJS can only carry text)
+        registry.addEndpoint("/ws-binary")
+                .setAllowedOrigins(ALLOWED_ORIGINS)
+                .addInterceptors(new HandshakeInterceptor() {
+                    @Override
+                    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                        attributes.put(BinaryPayloadInterceptor.RAW_WEBSOCKET_ATTRIBUTE, Boolean.TRUE);
+                        return true;
+                    }
+
+                    @Override
+                    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                               WebSocketHandler wsHandler, Exception exception) {
+                    }
+                });
+    }
+
+    /**
+     * Converters for @Payload arguments and template sends. The binary chat converter only
+     * handles frames with its exact content type, so JSON remains the default.
+     */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(new ChatMessageBinaryConverter());
+        // Keep the default converters (JSON, String, byte[]) after it
+        return true;
     }
 
     /**
      * Configure the message broker that routes messages between server and clients.
      * - "/app" prefix for messages destined for @MessageMapping annotated methods
-     * - "/topic" for broadcasting messages to all subscribers
+     * - "/topic" for broadcasting messages to the subscribers of a room
+     * - "/queue" for direct messages, addressed through /user/queue/messages
+     * In relay mode every broadcast (including the presence deltas behind the JOIN and LEAVE events)
+     * goes through the external broker, so clients on every node receive it.
+     * The simple broker negotiates STOMP heartbeats on its own scheduler thread and disconnects
+     * a client that misses three of its heartbeats; a relay leaves that to the external broker.
      */
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes("/app");
-        registry.enableSimpleBroker("/topic");
+        if ("relay".equals(brokerMode)) {
+            log.info("Relaying /topic and /queue to STOMP broker at {}:{}", relayHost, relayPort);
+            registry.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayClientLogin)
+                    .setClientPasscode(relayClientPasscode)
+                    .setSystemLogin(relaySystemLogin)
+                    .setSystemPasscode(relaySystemPasscode)
+                    // Share user sessions between nodes so /user destinations resolve cluster-wide
+                    .setUserDestinationBroadcast(USER_DESTINATION_BROADCAST)
+                    .setUserRegistryBroadcast(USER_REGISTRY_BROADCAST);
+        } else {
+            heartbeatScheduler = new ThreadPoolTaskScheduler();
+            heartbeatScheduler.setPoolSize(1);
+            heartbeatScheduler.setThreadNamePrefix("ws-heartbeat-");
+            heartbeatScheduler.setDaemon(true);
+            heartbeatScheduler.initialize();
+            registry.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[]{heartbeatServerMs, heartbeatClientMs})
+                    .setTaskScheduler(heartbeatScheduler);
+        }
+    }
+
+    /**
+     * Configure the channel carrying frames from clients to the server.
+     * The auth interceptor verifies the JWT once on CONNECT and attaches the principal to the session,
+     * then the room interceptor checks every SUBSCRIBE against the user's room memberships and keeps SENDs on /app.
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompAuthChannelInterceptor, roomSubscriptionInterceptor);
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("ws-inbound-"));
+        } else {
+            registration.taskExecutor()
+                    .corePoolSize(inboundCorePoolSize)
+                    .maxPoolSize(inboundMaxPoolSize)
+                    .queueCapacity(inboundQueueCapacity)
+                    .keepAliveSeconds(poolKeepAliveSeconds);
+        }
+    }
+
+    /**
+     * Configure the channel carrying frames from the server to clients.
+     * Sessions that opted in on CONNECT get binary payloads, or their JSON MESSAGE frames batched
+     * by the coalescing interceptor. The slow-consumer interceptor comes last and bounds what each
+     * session can have queued, whatever the earlier interceptors made of its frames.
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(binaryPayloadInterceptor, outboundCoalescingInterceptor, slowConsumerInterceptor);
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("ws-outbound-"));
+        } else {
+            registration.taskExecutor()
+                    .corePoolSize(outboundCorePoolSize)
+                    .maxPoolSize(outboundMaxPoolSize)
+                    .queueCapacity(outboundQueueCapacity)
+                    .keepAliveSeconds(poolKeepAliveSeconds);
+        }
+    }
+
+    /**
+     * Per-session transport limits.
+     * - sendTimeLimit / sendBufferSizeLimit: how long and how much a slow client may buffer before it is closed
+     * - messageSizeLimit: largest inbound STOMP frame
+     * - timeToFirstMessage: how long a connection may stay open without sending CONNECT
+     * The session registry decorates the handler so slow sessions can be closed by ID.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration
+                .setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .setTimeToFirstMessage(timeToFirstMessageMs)
+                .addDecoratorFactory(sessionRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (heartbeatScheduler != null) {
+            heartbeatScheduler.shutdown();
+        }
+    }
+
+    private VirtualThreadTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        if (Runtime.version().feature() < 21) {
+            throw new IllegalStateException("chat.ws.virtual-threads requires Java 21 or newer, running on "
+                    + Runtime.version());
+        }
+        log.info("Using virtual threads for {}", threadNamePrefix);
+        return new VirtualThreadTaskExecutor(threadNamePrefix);
     }
 }
@@ -1,33 +1,38 @@
 package com.lmg.backend.config;
 
-import com.lmg.backend.chat.ChatMessage;
-import com.lmg.backend.chat.MessageType;
+import com.lmg.backend.presence.PresenceRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.security.Principal;
+
+/**
+ * Feeds WebSocket session lifecycle events into the presence registry, which announces
+ * joins and leaves as batched deltas on /topic/presence.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class WebSocketEventListener {
-    private final SimpMessageSendingOperations messageTemplate;
-    @EventListener
-    public void handleWebSocketDisconnectListener(SessionDisconnectEvent event){
+    private final PresenceRegistry presenceRegistry;
 
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-        String username =(String) headerAccessor.getSessionAttributes().get("Username");
-        if(username != null){
-            log.info("User disconnected: {}", username);
-            var chatMessage = ChatMessage.builder()
-                    .type(MessageType.LEAVE)
-                    .sender(username)
-                    .build();
-            messageTemplate.convertAndSend("/topic/public", chatMessage);
+    @EventListener
+    public void handleWebSocketConnectListener(SessionConnectedEvent event){
+        Principal user = event.getUser();
+        if(user != null){
+            presenceRegistry.sessionConnected(StompHeaderAccessor.wrap(event.getMessage()).getSessionId(), user.getName());
         }
+    }
 
+    @EventListener
+    public void handleWebSocketDisconnectListener(SessionDisconnectEvent event){
+        String username = (String) StompHeaderAccessor.wrap(event.getMessage()).getSessionAttributes().get("Username");
+        log.debug("Session {} of {} disconnected", event.getSessionId(), username);
+        presenceRegistry.sessionDisconnected(event.getSessionId());
     }
 }
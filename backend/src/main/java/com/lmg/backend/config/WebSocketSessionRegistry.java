@@ -0,0 +1,157 @@
+package com.lmg.backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open WebSocket/SockJS sessions by ID (the same ID STOMP frames carry as simpSessionId),
+ * so the server can close a session it only knows from the messaging side.
+ * Registered as a decorator of the STOMP handler in WebSocketConfig.
+ * Also reaps sessions that have sent nothing, not even a heartbeat, for chat.ws.idle-timeout-ms.
+ * This catches half-open connections of clients that negotiated no STOMP heartbeats, which the
+ * broker cannot detect. Reaped sessions are closed like any other, so the disconnect event and
+ * presence LEAVE still follow.
+ */
+@Component
+@Slf4j
+public class WebSocketSessionRegistry implements WebSocketHandlerDecoratorFactory {
+
+    static final CloseStatus IDLE = CloseStatus.SESSION_NOT_RELIABLE.withReason("Idle timeout");
+
+    private final long idleTimeoutNanos;
+    private final Counter reapedSessions;
+
+    private final Map<String, TrackedSession> sessions = new ConcurrentHashMap<>();
+    // Closing can wait on a write to a stuck client, so it never runs on the caller's thread
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ws-sessions");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WebSocketSessionRegistry(MeterRegistry meterRegistry,
+                                    @Value("${chat.ws.idle-timeout-ms:120000}") long idleTimeoutMs) {
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.reapedSessions = Counter.builder("chat.ws.sessions.reaped")
+                .description("Sessions closed for sending nothing within the idle timeout")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (idleTimeoutNanos > 0) {
+            // Checked four times per timeout, so a session goes at most a quarter past it
+            long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 4);
+            scheduler.scheduleWithFixedDelay(() -> reapIdle(System.nanoTime()), period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                sessions.put(session.getId(), new TrackedSession(session));
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                // Every inbound frame counts, STOMP heartbeats included
+                TrackedSession tracked = sessions.get(session.getId());
+                if (tracked != null) {
+                    tracked.lastActive = System.nanoTime();
+                }
+                super.handleMessage(session, message);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Close a session in the background. The usual SessionDisconnectEvent follows once it is closed.
+     *
+     * @return False if no such session is open
+     */
+    public boolean close(String sessionId, CloseStatus status) {
+        TrackedSession tracked = sessions.get(sessionId);
+        if (tracked == null) {
+            return false;
+        }
+        scheduler.execute(() -> closeNow(tracked.session, status));
+        return true;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Close every session that has been silent for longer than the idle timeout.
+     *
+     * @param now Current System.nanoTime()
+     * @return Number of sessions closed
+     */
+    int reapIdle(long now) {
+        int reaped = 0;
+        for (TrackedSession tracked : sessions.values()) {
+            if (now - tracked.lastActive > idleTimeoutNanos && tracked.session.isOpen()) {
+                log.debug("Closing session {} after {} ms without a frame", tracked.session.getId(),
+                        TimeUnit.NANOSECONDS.toMillis(now - tracked.lastActive));
+                closeNow(tracked.session, IDLE);
+                reaped++;
+            }
+        }
+        if (reaped > 0) {
+            reapedSessions.increment(reaped);
+            log.info("Reaped {} idle WebSocket sessions", reaped);
+        }
+        return reaped;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static void closeNow(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to close session {}", session.getId(), e);
+        }
+    }
+
+    private static final class TrackedSession {
+
+        private final WebSocketSession session;
+        private volatile long lastActive = System.nanoTime();
+
+        TrackedSession(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
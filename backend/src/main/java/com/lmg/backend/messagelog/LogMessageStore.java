@@ -0,0 +1,340 @@
+package com.lmg.backend.messagelog;
+
+import com.lmg.backend.chat.ChatMessage;
+import com.lmg.backend.chat.ChatMessageBinaryCodec;
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.MessageCursor;
+import com.lmg.backend.chat.MessageStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Message store backed by an append-only log of memory-mapped segment files, enabled with chat.store.type=log.
+ * Appends copy the encoded message into the active segment and return without a database round trip;
+ * once a segment is full a new one is started. History reads use each segment's sparse index to
+ * jump near the cursor and scan from there.
+ * Durability is set by chat.store.log.fsync:
+ * - always: every append is forced to disk before it returns
+ * - interval: a background thread forces new records every fsync-interval-ms
+ * - never: left to the operating system's page cache writeback
+ * Closed segments are deleted once their newest message is older than retention-hours,
+ * or while there are more than max-segments of them.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "log")
+@Slf4j
+public class LogMessageStore implements MessageStore {
+
+    public enum FsyncPolicy {
+        ALWAYS, INTERVAL, NEVER
+    }
+
+    private static final long RETENTION_CHECK_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int indexInterval;
+    private final FsyncPolicy fsync;
+    private final long fsyncIntervalMs;
+    private final long retentionMicros;
+    private final int maxSegments;
+
+    // Appends and retention take the write lock, history reads share the read lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<LogSegment> segments = new ArrayList<>();
+    private LogSegment active;
+    private long nextId;
+    private long lastMicros;
+    private boolean open;
+
+    private ScheduledExecutorService scheduler;
+
+    public LogMessageStore(@Value("${chat.store.log.dir:./data/messages}") String directory,
+                           @Value("${chat.store.log.segment-bytes:67108864}") int segmentBytes,
+                           @Value("${chat.store.log.index-interval:64}") int indexInterval,
+                           @Value("${chat.store.log.fsync:interval}") FsyncPolicy fsync,
+                           @Value("${chat.store.log.fsync-interval-ms:200}") long fsyncIntervalMs,
+                           @Value("${chat.store.log.retention-hours:168}") long retentionHours,
+                           @Value("${chat.store.log.max-segments:0}") int maxSegments) {
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+        this.fsync = fsync;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.retentionMicros = TimeUnit.HOURS.toMicros(retentionHours);
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Map the existing segments (recovering a torn tail in the last one) and start the background jobs.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                // Zero-padded base IDs, so name order is log order
+                files = list.filter(path -> path.getFileName().toString().endsWith(LogSegment.SUFFIX)).sorted().toList();
+            }
+            for (Path file : files) {
+                segments.add(LogSegment.open(file, indexInterval));
+            }
+            if (segments.isEmpty()) {
+                segments.add(LogSegment.create(directory, 1, segmentBytes, indexInterval));
+            }
+            active = segments.get(segments.size() - 1);
+
+            nextId = active.getBaseId();
+            for (LogSegment segment : segments) {
+                if (!segment.isEmpty()) {
+                    nextId = Math.max(nextId, segment.getLastId() + 1);
+                    lastMicros = Math.max(lastMicros, segment.getLastMicros());
+                }
+            }
+            open = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsync == FsyncPolicy.INTERVAL) {
+            scheduler.scheduleWithFixedDelay(this::forceActive, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(() -> enforceRetention(toMicros(LocalDateTime.now())),
+                0, RETENTION_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        log.info("Message log opened at {} with {} segments, next id {} (fsync {})",
+                directory.toAbsolutePath(), segments.size(), nextId, fsync.name().toLowerCase());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+            for (LogSegment segment : segments) {
+                if (fsync != FsyncPolicy.NEVER) {
+                    segment.force();
+                }
+                segment.close();
+            }
+            segments.clear();
+        } catch (IOException e) {
+            log.warn("Failed to close message log segments", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ChatMessage append(ChatMessage message) {
+        lock.writeLock().lock();
+        try {
+            if (!open) {
+                throw new IllegalStateException("Message log is closed");
+            }
+            // sentAt never goes backwards, so log order is also (sentAt, id) order and the index can be searched by it
+            long micros = Math.max(toMicros(LocalDateTime.now()), lastMicros);
+            message.setId(nextId);
+            message.setSentAt(fromMicros(micros));
+            byte[] payload = ChatMessageBinaryCodec.encode(ChatMessageView.from(message));
+            int roomHash = message.getRoom().hashCode();
+
+            if (!active.append(nextId, micros, roomHash, payload)) {
+                if (!active.isEmpty()) {
+                    roll();
+                }
+                if (!active.append(nextId, micros, roomHash, payload)) {
+                    throw new IllegalArgumentException("Message of " + payload.length + " bytes does not fit in a log segment");
+                }
+            }
+            nextId++;
+            lastMicros = micros;
+            if (fsync == FsyncPolicy.ALWAYS) {
+                active.force();
+            }
+            return message;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start a new message log segment", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ChatMessageView> findLatest(String room, int limit) {
+        return findBefore(room, Long.MAX_VALUE, Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<ChatMessageView> findBefore(String room, MessageCursor cursor, int limit) {
+        return findBefore(room, toMicros(cursor.sentAt()), cursor.id(), limit);
+    }
+
+    @Override
+    public List<ChatMessageView> findAfter(String room, MessageCursor cursor, int limit) {
+        long micros = toMicros(cursor.sentAt());
+        List<ChatMessageView> result = new ArrayList<>(Math.min(limit, 64));
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < segments.size() && result.size() < limit; i++) {
+                segments.get(i).collectAfter(room, micros, cursor.id(), limit, result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public List<ChatMessageView> scan(long afterId, int limit) {
+        List<ChatMessageView> result = new ArrayList<>(Math.min(limit, 1024));
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < segments.size() && result.size() < limit; i++) {
+                segments.get(i).collectAfterId(afterId, limit, result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public long idBeforeLatest(int count) {
+        lock.readLock().lock();
+        try {
+            // IDs are handed out one by one, so the latest count messages are the last count IDs
+            return Math.max(0, nextId - 1 - count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete closed segments, oldest first, that have expired or exceed max-segments.
+     * The active segment is always kept.
+     *
+     * @param nowMicros Current time in microseconds since the epoch (UTC)
+     * @return Number of segments deleted
+     */
+    int enforceRetention(long nowMicros) {
+        long cutoff = nowMicros - retentionMicros;
+        int deleted = 0;
+        lock.writeLock().lock();
+        try {
+            while (open && segments.size() > 1) {
+                LogSegment oldest = segments.get(0);
+                boolean expired = oldest.isEmpty() || oldest.getLastMicros() < cutoff;
+                boolean overLimit = maxSegments > 0 && segments.size() > maxSegments;
+                if (!expired && !overLimit) {
+                    break;
+                }
+                segments.remove(0);
+                try {
+                    oldest.delete();
+                } catch (IOException e) {
+                    log.warn("Failed to delete message log segment {}", LogSegment.fileName(oldest.getBaseId()), e);
+                }
+                deleted++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (deleted > 0) {
+            log.info("Message log retention deleted {} segments", deleted);
+        }
+        return deleted;
+    }
+
+    private List<ChatMessageView> findBefore(String room, long micros, long id, int limit) {
+        List<ChatMessageView> result = new ArrayList<>(Math.min(limit, 64));
+        lock.readLock().lock();
+        try {
+            for (int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+                segments.get(i).collectBefore(room, micros, id, limit, result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private void roll() throws IOException {
+        if (fsync != FsyncPolicy.NEVER) {
+            active.force();
+        }
+        active = LogSegment.create(directory, nextId, segmentBytes, indexInterval);
+        segments.add(active);
+        if (maxSegments > 0 && segments.size() > maxSegments) {
+            enforceRetention(lastMicros);
+        }
+    }
+
+    private void forceActive() {
+        LogSegment segment;
+        lock.readLock().lock();
+        try {
+            segment = active;
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Forced outside the lock so appends are not held up by the disk
+        try {
+            segment.force();
+        } catch (RuntimeException e) {
+            log.warn("Failed to force message log segment to disk", e);
+        }
+    }
+
+    // Same UTC convention as ChatMessageBinaryCodec, so stored and decoded timestamps agree
+    private static long toMicros(LocalDateTime sentAt) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, sentAt.toInstant(ZoneOffset.UTC));
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofInstant(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,372 @@
+package com.lmg.backend.messagelog;
+
+import com.lmg.backend.chat.ChatMessageBinaryCodec;
+import com.lmg.backend.chat.ChatMessageView;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the message log: records appended back to back into a preallocated, memory-mapped file.
+ * Record layout (big-endian):
+ * - int: length of everything after the checksum
+ * - int: CRC32 of everything after the checksum
+ * - long: message id
+ * - long: sentAt in microseconds since the epoch (UTC)
+ * - int: hash of the room key, so other rooms' records are skipped without decoding them
+ * - the message in ChatMessageBinaryCodec form
+ * A zero length marks the end of the written records.
+ * Every indexInterval-th record is kept in a sparse in-memory index of (sentAt, id) to file position,
+ * rebuilt by scanning the file when it is opened.
+ * Not thread-safe on its own, LogMessageStore serializes appends against reads.
+ */
+@Slf4j
+final class LogSegment implements Closeable {
+
+    static final String SUFFIX = ".log";
+
+    private static final int LENGTH_AND_CRC = 8;
+    private static final int FIXED_FIELDS = 8 + 8 + 4;
+
+    // sun.misc.Unsafe.invokeCleaner, to release a deleted segment's mapping now rather than at some later GC;
+    // null if this JVM does not offer it
+    private static final Unmapper UNMAPPER = Unmapper.find();
+
+    private final Path path;
+    private final long baseId;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int indexInterval;
+
+    // Read without the store's lock by the interval fsync thread
+    private volatile int writePosition;
+    private int forcedPosition;
+    // Set under the monitor before the buffer is unmapped, so a late force() from the fsync thread backs off
+    private boolean deleted;
+    private int recordCount;
+    private long lastId;
+    private long lastMicros;
+
+    private long[] indexIds = new long[16];
+    private long[] indexMicros = new long[16];
+    private int[] indexPositions = new int[16];
+    private int indexSize;
+
+    private LogSegment(Path path, long baseId, FileChannel channel, int capacity, int indexInterval) throws IOException {
+        this.path = path;
+        this.baseId = baseId;
+        this.channel = channel;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Create an empty segment whose first record will have the given ID.
+     */
+    static LogSegment create(Path directory, long baseId, int capacity, int indexInterval) throws IOException {
+        Path path = directory.resolve(fileName(baseId));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new LogSegment(path, baseId, channel, capacity, indexInterval);
+    }
+
+    /**
+     * Map an existing segment and rebuild its index. A torn or corrupt tail (left by a crash
+     * mid-write) is zeroed, so the segment ends at its last intact record.
+     */
+    static LogSegment open(Path path, int indexInterval) throws IOException {
+        String name = path.getFileName().toString();
+        long baseId = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LogSegment segment = new LogSegment(path, baseId, channel, (int) channel.size(), indexInterval);
+        segment.recover();
+        return segment;
+    }
+
+    static String fileName(long baseId) {
+        return String.format("%020d%s", baseId, SUFFIX);
+    }
+
+    /**
+     * Append one record.
+     *
+     * @return False if the record does not fit in the remaining space
+     */
+    boolean append(long id, long micros, int roomHash, byte[] payload) {
+        int length = FIXED_FIELDS + payload.length;
+        int position = writePosition;
+        if ((long) position + LENGTH_AND_CRC + length > buffer.capacity()) {
+            return false;
+        }
+        int body = position + LENGTH_AND_CRC;
+        buffer.putLong(body, id);
+        buffer.putLong(body + 8, micros);
+        buffer.putInt(body + 16, roomHash);
+        buffer.put(body + FIXED_FIELDS, payload);
+        buffer.putInt(position + 4, crc(body, length));
+        // Length last: a record is only reachable once the rest of it is written
+        buffer.putInt(position, length);
+
+        indexRecord(position, id, micros);
+        writePosition = body + length;
+        return true;
+    }
+
+    /**
+     * Matching records strictly older than (micros, id), newest first, added to result until it holds limit.
+     */
+    void collectBefore(String room, long micros, long id, int limit, List<ChatMessageView> result) {
+        int roomHash = room.hashCode();
+        List<ChatMessageView> chunk = new ArrayList<>();
+        for (int i = lastChunkBelow(micros, id, false); i >= 0 && result.size() < limit; i--) {
+            // Records only link forward, so each chunk is read oldest first and then reversed
+            int end = i + 1 < indexSize ? indexPositions[i + 1] : writePosition;
+            for (int position = indexPositions[i]; position < end; position = next(position)) {
+                if (compare(recordMicros(position), recordId(position), micros, id) >= 0) {
+                    break;
+                }
+                addIfInRoom(position, room, roomHash, chunk);
+            }
+            for (int j = chunk.size() - 1; j >= 0 && result.size() < limit; j--) {
+                result.add(chunk.get(j));
+            }
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Matching records strictly newer than (micros, id), oldest first, added to result until it holds limit.
+     */
+    void collectAfter(String room, long micros, long id, int limit, List<ChatMessageView> result) {
+        if (isEmpty() || compare(lastMicros, lastId, micros, id) <= 0) {
+            return;
+        }
+        int roomHash = room.hashCode();
+        int start = indexPositions[Math.max(0, lastChunkBelow(micros, id, true))];
+        int end = writePosition;
+        for (int position = start; position < end && result.size() < limit; position = next(position)) {
+            if (compare(recordMicros(position), recordId(position), micros, id) > 0) {
+                addIfInRoom(position, room, roomHash, result);
+            }
+        }
+    }
+
+    /**
+     * Records of any room with an ID above afterId, in log (and so ID) order, added to result until it holds limit.
+     */
+    void collectAfterId(long afterId, int limit, List<ChatMessageView> result) {
+        if (isEmpty() || lastId <= afterId) {
+            return;
+        }
+        // IDs only grow along the log, so the index can be searched by ID alone
+        int chunk = Arrays.binarySearch(indexIds, 0, indexSize, afterId);
+        int start = indexPositions[chunk >= 0 ? chunk : Math.max(0, -chunk - 2)];
+        int end = writePosition;
+        for (int position = start; position < end && result.size() < limit; position = next(position)) {
+            if (recordId(position) > afterId) {
+                result.add(read(position));
+            }
+        }
+    }
+
+    /**
+     * Flush records written since the last call to the storage device.
+     */
+    synchronized void force() {
+        if (deleted) {
+            return;
+        }
+        int end = writePosition;
+        if (end > forcedPosition) {
+            buffer.force(forcedPosition, end - forcedPosition);
+            forcedPosition = end;
+        }
+    }
+
+    boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    long getBaseId() {
+        return baseId;
+    }
+
+    long getLastId() {
+        return lastId;
+    }
+
+    long getLastMicros() {
+        return lastMicros;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping itself is released when the buffer is garbage collected
+        channel.close();
+    }
+
+    /**
+     * Close and delete the file. The store has already dropped the segment under its write lock, so only
+     * the interval fsync thread, which forces the segment it last saw as active outside that lock, can still
+     * reach the buffer; force() and this method share the segment's monitor and force() skips a deleted
+     * segment, so the mapping can be released right away instead of staying mapped (a full segment-bytes,
+     * and the deleted file's disk space) until the buffer happens to be collected.
+     */
+    synchronized void delete() throws IOException {
+        deleted = true;
+        close();
+        if (UNMAPPER != null) {
+            UNMAPPER.unmap(buffer);
+        }
+        Files.deleteIfExists(path);
+    }
+
+    private void recover() {
+        int position = 0;
+        int capacity = buffer.capacity();
+        boolean torn = false;
+        while (position + LENGTH_AND_CRC + FIXED_FIELDS <= capacity) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            int body = position + LENGTH_AND_CRC;
+            if (length < FIXED_FIELDS || length > capacity - body
+                    || crc(body, length) != buffer.getInt(position + 4)
+                    || (recordCount > 0 && buffer.getLong(body) <= lastId)) {
+                torn = true;
+                break;
+            }
+            indexRecord(position, buffer.getLong(body), buffer.getLong(body + 8));
+            position = body + length;
+        }
+        writePosition = position;
+        forcedPosition = position;
+
+        if (torn) {
+            log.warn("Message log segment {} has a torn record at byte {}, truncating after {} records",
+                    path.getFileName(), position, recordCount);
+            for (int i = position; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force(position, capacity - position);
+        }
+    }
+
+    private void indexRecord(int position, long id, long micros) {
+        if (recordCount % indexInterval == 0) {
+            if (indexSize == indexIds.length) {
+                indexIds = Arrays.copyOf(indexIds, indexSize * 2);
+                indexMicros = Arrays.copyOf(indexMicros, indexSize * 2);
+                indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+            }
+            indexIds[indexSize] = id;
+            indexMicros[indexSize] = micros;
+            indexPositions[indexSize] = position;
+            indexSize++;
+        }
+        recordCount++;
+        lastId = id;
+        lastMicros = micros;
+    }
+
+    /**
+     * Index of the last chunk whose first record is below (or, if inclusive, at) the key, -1 if there is none.
+     */
+    private int lastChunkBelow(long micros, long id, boolean inclusive) {
+        int low = 0;
+        int high = indexSize - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(indexMicros[mid], indexIds[mid], micros, id);
+            if (cmp < 0 || (inclusive && cmp == 0)) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void addIfInRoom(int position, String room, int roomHash, List<ChatMessageView> target) {
+        int body = position + LENGTH_AND_CRC;
+        if (buffer.getInt(body + 16) != roomHash) {
+            return;
+        }
+        ChatMessageView message = read(position);
+        if (room.equals(message.getRoom())) {
+            target.add(message);
+        }
+    }
+
+    private ChatMessageView read(int position) {
+        byte[] payload = new byte[buffer.getInt(position) - FIXED_FIELDS];
+        buffer.get(position + LENGTH_AND_CRC + FIXED_FIELDS, payload);
+        return ChatMessageBinaryCodec.decode(payload);
+    }
+
+    private int next(int position) {
+        return position + LENGTH_AND_CRC + buffer.getInt(position);
+    }
+
+    private long recordId(int position) {
+        return buffer.getLong(position + LENGTH_AND_CRC);
+    }
+
+    private long recordMicros(int position) {
+        return buffer.getLong(position + LENGTH_AND_CRC + 8);
+    }
+
+    private int crc(int from, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(from, length));
+        return (int) crc.getValue();
+    }
+
+    static int compare(long micros, long id, long otherMicros, long otherId) {
+        int byMicros = Long.compare(micros, otherMicros);
+        return byMicros != 0 ? byMicros : Long.compare(id, otherId);
+    }
+
+    private record Unmapper(Object unsafe, Method invokeCleaner) {
+
+        static Unmapper find() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new Unmapper(theUnsafe.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Cannot unmap message log segments explicitly, deleted segments stay mapped until GC", e);
+                return null;
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer) {
+            try {
+                invokeCleaner.invoke(unsafe, buffer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Failed to unmap message log segment, it stays mapped until GC", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.lmg.backend.presence;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Current roster; clients load it once and then follow the deltas on /topic/presence.
+ */
+@RestController
+@RequestMapping("/api/presence")
+@RequiredArgsConstructor
+public class PresenceController {
+
+    private final PresenceRegistry presenceRegistry;
+
+    @GetMapping
+    public PresenceRoster roster() {
+        return presenceRegistry.getRoster();
+    }
+}
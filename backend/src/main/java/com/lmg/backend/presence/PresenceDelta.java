@@ -0,0 +1,18 @@
+package com.lmg.backend.presence;
+
+import java.util.List;
+
+/**
+ * Presence changes of one node since its previous delta, broadcast on /topic/presence.
+ * Clients keep the online users of each node apart and show the union, so a user whose tabs
+ * are spread over several nodes only goes offline once the last of those nodes reports it.
+ *
+ * @param node Node that sent the delta; versions are only comparable within one node
+ * @param version Increases by one per delta of the node; a client holding version v of that node applies deltas above v
+ * @param snapshot True for the periodic full list a node sends behind a relay: online then holds all of
+ *                 the node's users, replaces what the client holds for that node, and version is unchanged
+ * @param online Users who came online (or, in a snapshot, every user online on the node)
+ * @param offline Users who went offline
+ */
+public record PresenceDelta(String node, long version, boolean snapshot, List<String> online, List<String> offline) {
+}
@@ -0,0 +1,172 @@
+package com.lmg.backend.presence;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Who is online, tracked per WebSocket session with a per-user count so a second tab
+ * does not announce the user again and closing one of two tabs does not take them offline.
+ * Changes are not broadcast one by one: they are collected for chat.presence.debounce-ms and
+ * published as a single PresenceDelta with only the net changes, so a reconnect storm after
+ * a deploy (everyone leaving and coming back) produces a handful of small frames, often empty
+ * ones that are not sent at all.
+ * Counts and versions are per node: every delta names the node that sent it, and clients combine
+ * the nodes, so behind a broker relay a user with a tab on another node stays online when this node
+ * reports them offline. The roster endpoint only knows the serving node, so with chat.broker.mode=relay
+ * each node also sends its full list every chat.presence.relay-snapshot-ms; that fills in the other
+ * nodes for a client that just connected, and lets clients forget a node that stopped without saying so.
+ */
+@Component
+@Slf4j
+public class PresenceRegistry {
+
+    public static final String PRESENCE_TOPIC = "/topic/presence";
+
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final long debounceMs;
+    private final long snapshotIntervalMs;
+    private final String node = UUID.randomUUID().toString();
+
+    private final Map<String, String> userBySession = new ConcurrentHashMap<>();
+    private final Map<String, Integer> sessionCounts = new ConcurrentHashMap<>();
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+
+    // What clients have been told so far, guarded by this
+    private final Set<String> published = new HashSet<>();
+    private long version;
+
+    public PresenceRegistry(SimpMessageSendingOperations messagingTemplate,
+                            @Value("${chat.presence.debounce-ms:250}") long debounceMs,
+                            @Value("${chat.broker.mode:simple}") String brokerMode,
+                            @Value("${chat.presence.relay-snapshot-ms:30000}") long relaySnapshotMs) {
+        this.messagingTemplate = messagingTemplate;
+        this.debounceMs = debounceMs;
+        // A single node's roster is complete, snapshots only matter when several nodes share the topic
+        this.snapshotIntervalMs = "relay".equals(brokerMode) ? relaySnapshotMs : 0;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::publishSnapshot, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Record a session of a user. Registering the same session again is a no-op.
+     */
+    public void sessionConnected(String sessionId, String username) {
+        if (sessionId == null || username == null || userBySession.putIfAbsent(sessionId, username) != null) {
+            return;
+        }
+        sessionCounts.merge(username, 1, Integer::sum);
+        markChanged(username);
+    }
+
+    /**
+     * Forget a session; its user goes offline once their last session is gone.
+     */
+    public void sessionDisconnected(String sessionId) {
+        String username = sessionId == null ? null : userBySession.remove(sessionId);
+        if (username == null) {
+            return;
+        }
+        sessionCounts.computeIfPresent(username, (user, count) -> count == 1 ? null : count - 1);
+        markChanged(username);
+    }
+
+    public boolean isOnline(String username) {
+        return sessionCounts.containsKey(username);
+    }
+
+    public int getSessionCount() {
+        return userBySession.size();
+    }
+
+    public int getOnlineCount() {
+        return sessionCounts.size();
+    }
+
+    /**
+     * The online users of this node as last published, with the version of the delta that produced it.
+     */
+    public synchronized PresenceRoster getRoster() {
+        return new PresenceRoster(node, version, published.stream().sorted().toList(), snapshotIntervalMs);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void markChanged(String username) {
+        changed.add(username);
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Compare every changed user's current state with what clients last heard and send the difference.
+     */
+    synchronized void flush() {
+        // Changes from here on schedule the next flush
+        flushScheduled.set(false);
+
+        List<String> online = new ArrayList<>();
+        List<String> offline = new ArrayList<>();
+        Iterator<String> users = changed.iterator();
+        while (users.hasNext()) {
+            String username = users.next();
+            users.remove();
+            if (sessionCounts.containsKey(username)) {
+                if (published.add(username)) {
+                    online.add(username);
+                }
+            } else if (published.remove(username)) {
+                offline.add(username);
+            }
+        }
+        if (online.isEmpty() && offline.isEmpty()) {
+            return;
+        }
+
+        version++;
+        try {
+            messagingTemplate.convertAndSend(PRESENCE_TOPIC, new PresenceDelta(node, version, false, online, offline));
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish presence delta {}", version, e);
+        }
+    }
+
+    /**
+     * Send everyone this node has published as online, at the current version.
+     */
+    synchronized void publishSnapshot() {
+        try {
+            messagingTemplate.convertAndSend(PRESENCE_TOPIC,
+                    new PresenceDelta(node, version, true, published.stream().sorted().toList(), List.of()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish presence snapshot {}", version, e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.lmg.backend.presence;
+
+import java.util.List;
+
+/**
+ * Everyone online on the serving node as of one of its delta versions, see PresenceDelta.
+ *
+ * @param snapshotIntervalMs How often each node sends a snapshot behind a relay, 0 when it does not;
+ *                           a client forgets a node it has not heard from for a few of these intervals
+ */
+public record PresenceRoster(String node, long version, List<String> online, long snapshotIntervalMs) {
+}
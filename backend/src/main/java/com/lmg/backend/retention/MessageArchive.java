@@ -0,0 +1,295 @@
+package com.lmg.backend.retention;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.MessageCursor;
+import com.lmg.backend.chat.MessageType;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage for messages moved out of the messages table by MessageRetentionJob.
+ * One gzip file of JSON lines per room and day, at {dir}/{url-encoded room}/{yyyy-MM-dd}.jsonl.gz,
+ * so a history page only decompresses the days it reaches and the files can be read with zcat.
+ * Each archived chunk is appended as its own gzip member; readers see the members as one stream.
+ * A chunk archived twice (a crash between writing it and deleting its rows) is read back once,
+ * because rows are de-duplicated by ID when a file is loaded.
+ * The last few decoded files are cached, since scrolling back reads the same day for several pages.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jdbc", matchIfMissing = true)
+@Slf4j
+public class MessageArchive {
+
+    private static final String SUFFIX = ".jsonl.gz";
+    private static final Comparator<ChatMessageView> ORDER =
+            Comparator.comparing(ChatMessageView::getSentAt).thenComparing(ChatMessageView::getId);
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final int cachedFiles;
+
+    // Archived days of each room, so rooms without archived history never touch the disk
+    private final Map<String, NavigableSet<LocalDate>> daysByRoom = new ConcurrentHashMap<>();
+    // Appends take the write lock, so readers never see half a gzip member
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Path, List<ChatMessageView>> cache;
+
+    public MessageArchive(ObjectMapper objectMapper,
+                          @Value("${chat.retention.archive.dir:./data/archive}") String directory,
+                          @Value("${chat.retention.archive.cached-files:16}") int cachedFiles) {
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.cachedFiles = cachedFiles;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, List<ChatMessageView>> eldest) {
+                return size() > MessageArchive.this.cachedFiles;
+            }
+        };
+    }
+
+    /**
+     * Index the rooms and days already archived.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            // Created with the first archived chunk
+            return;
+        }
+        int files = 0;
+        try (Stream<Path> rooms = Files.list(directory)) {
+            for (Path roomDirectory : rooms.filter(Files::isDirectory).toList()) {
+                String room = URLDecoder.decode(roomDirectory.getFileName().toString(), StandardCharsets.UTF_8);
+                try (Stream<Path> days = Files.list(roomDirectory)) {
+                    for (Path file : days.toList()) {
+                        LocalDate day = dayOf(file);
+                        if (day != null) {
+                            daysOf(room).add(day);
+                            files++;
+                        }
+                    }
+                }
+            }
+        }
+        log.info("Message archive opened at {} with {} files in {} rooms", directory.toAbsolutePath(), files, daysByRoom.size());
+    }
+
+    /**
+     * Append messages to their rooms' day files and force them to disk.
+     *
+     * @throws UncheckedIOException if a file cannot be written; files written before it keep their rows
+     */
+    public void append(List<ChatMessageView> messages) {
+        Map<Path, List<ChatMessageView>> byFile = new LinkedHashMap<>();
+        for (ChatMessageView message : messages) {
+            byFile.computeIfAbsent(fileOf(message.getRoom(), message.getSentAt().toLocalDate()), file -> new ArrayList<>())
+                    .add(message);
+        }
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Path, List<ChatMessageView>> entry : byFile.entrySet()) {
+                ChatMessageView first = entry.getValue().get(0);
+                write(entry.getKey(), entry.getValue());
+                daysOf(first.getRoom()).add(first.getSentAt().toLocalDate());
+                synchronized (cache) {
+                    cache.remove(entry.getKey());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write message archive", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Archived messages of a room strictly older than the cursor (or the newest ones if it is null), newest first.
+     */
+    public List<ChatMessageView> findBefore(String room, MessageCursor cursor, int limit) {
+        NavigableSet<LocalDate> days = daysByRoom.get(room);
+        List<ChatMessageView> result = new ArrayList<>();
+        if (days == null) {
+            return result;
+        }
+        NavigableSet<LocalDate> candidates = cursor == null
+                ? days.descendingSet()
+                : days.headSet(cursor.sentAt().toLocalDate(), true).descendingSet();
+        for (LocalDate day : candidates) {
+            List<ChatMessageView> rows = load(room, day);
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                ChatMessageView row = rows.get(i);
+                if (cursor == null || compare(row, cursor) < 0) {
+                    result.add(row);
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Archived messages of a room strictly newer than the cursor, oldest first.
+     */
+    public List<ChatMessageView> findAfter(String room, MessageCursor cursor, int limit) {
+        NavigableSet<LocalDate> days = daysByRoom.get(room);
+        List<ChatMessageView> result = new ArrayList<>();
+        if (days == null) {
+            return result;
+        }
+        for (LocalDate day : days.tailSet(cursor.sentAt().toLocalDate(), true)) {
+            for (ChatMessageView row : load(room, day)) {
+                if (compare(row, cursor) > 0) {
+                    result.add(row);
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getFileCount() {
+        int files = 0;
+        for (NavigableSet<LocalDate> days : daysByRoom.values()) {
+            files += days.size();
+        }
+        return files;
+    }
+
+    /**
+     * A room's messages of one day in (sentAt, id) order, without duplicates.
+     */
+    private List<ChatMessageView> load(String room, LocalDate day) {
+        Path file = fileOf(room, day);
+        synchronized (cache) {
+            List<ChatMessageView> cached = cache.get(file);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<ChatMessageView> rows = new ArrayList<>();
+        lock.readLock().lock();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    rows.add(decode(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read message archive " + file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        rows.sort(ORDER);
+        List<ChatMessageView> unique = new ArrayList<>(rows.size());
+        for (ChatMessageView row : rows) {
+            if (unique.isEmpty() || !unique.get(unique.size() - 1).getId().equals(row.getId())) {
+                unique.add(row);
+            }
+        }
+        synchronized (cache) {
+            cache.put(file, unique);
+        }
+        return unique;
+    }
+
+    private void write(Path file, List<ChatMessageView> messages) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+            for (ChatMessageView message : messages) {
+                writer.write(objectMapper.writeValueAsString(message));
+                writer.write('\n');
+            }
+            writer.flush();
+            // Completes this gzip member without closing the channel underneath
+            gzip.finish();
+            channel.force(false);
+        }
+    }
+
+    private ChatMessageView decode(String line) throws IOException {
+        JsonNode node = objectMapper.readTree(line);
+        return new ChatMessageView(
+                node.get("id").asLong(),
+                node.get("room").asText(),
+                text(node, "sender"),
+                text(node, "content"),
+                node.hasNonNull("type") ? MessageType.valueOf(node.get("type").asText()) : null,
+                objectMapper.treeToValue(node.get("sentAt"), LocalDateTime.class));
+    }
+
+    private static String text(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+
+    private Path fileOf(String room, LocalDate day) {
+        return directory.resolve(URLEncoder.encode(room, StandardCharsets.UTF_8)).resolve(day + SUFFIX);
+    }
+
+    private NavigableSet<LocalDate> daysOf(String room) {
+        return daysByRoom.computeIfAbsent(room, key -> new ConcurrentSkipListSet<>());
+    }
+
+    private static LocalDate dayOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(SUFFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static int compare(ChatMessageView row, MessageCursor cursor) {
+        int bySentAt = row.getSentAt().compareTo(cursor.sentAt());
+        return bySentAt != 0 ? bySentAt : Long.compare(row.getId(), cursor.id());
+    }
+}
@@ -0,0 +1,155 @@
+package com.lmg.backend.retention;
+
+import com.lmg.backend.chat.ChatMessageRepository;
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.MessageCursor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the messages table down to its hot window by moving older rows into the MessageArchive.
+ * Every chat.retention.interval-ms a background thread archives, oldest (sent_at, id) first:
+ * - rows older than max-age-days
+ * - rows beyond the newest max-rows, whatever their age
+ * IDs come from per-node pooled blocks and do not follow time across nodes, so rows are taken in sent_at order,
+ * which is also what keeps every archived row older than the rows left in the table (see JdbcMessageStore).
+ * It works in chunks of chunk-size rows: read them from idx_messages_sent_at_id with a keyset cursor, append
+ * them to the archive, delete them, then pause for chunk-pause-ms. Each step is a short statement of its own, so chat inserts never wait on a
+ * long-running delete. Rows are written to the archive before they are deleted, so a crash in between
+ * leaves them in both places, which history reads tolerate, rather than in neither.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jdbc", matchIfMissing = true)
+@Slf4j
+public class MessageRetentionJob {
+
+    private final ChatMessageRepository repository;
+    private final MessageArchive archive;
+    private final boolean enabled;
+    private final long maxAgeDays;
+    private final long maxRows;
+    private final int chunkSize;
+    private final long chunkPauseMs;
+    private final long intervalMs;
+
+    private final Counter archivedMessages;
+    private final Timer chunkTimer;
+    private ScheduledExecutorService scheduler;
+
+    public MessageRetentionJob(ChatMessageRepository repository, MessageArchive archive, MeterRegistry meterRegistry,
+                               @Value("${chat.retention.enabled:true}") boolean enabled,
+                               @Value("${chat.retention.max-age-days:30}") long maxAgeDays,
+                               @Value("${chat.retention.max-rows:0}") long maxRows,
+                               @Value("${chat.retention.chunk-size:1000}") int chunkSize,
+                               @Value("${chat.retention.chunk-pause-ms:50}") long chunkPauseMs,
+                               @Value("${chat.retention.interval-ms:3600000}") long intervalMs) {
+        this.repository = repository;
+        this.archive = archive;
+        this.enabled = enabled;
+        this.maxAgeDays = maxAgeDays;
+        this.maxRows = maxRows;
+        this.chunkSize = chunkSize;
+        this.chunkPauseMs = chunkPauseMs;
+        this.intervalMs = intervalMs;
+        this.archivedMessages = Counter.builder("chat.retention.archived")
+                .description("Messages moved from the messages table to the archive")
+                .register(meterRegistry);
+        this.chunkTimer = Timer.builder("chat.retention.chunk")
+                .description("Time to archive and delete one chunk of messages")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled || (maxAgeDays <= 0 && maxRows <= 0)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, 0, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("Message retention started (max age {} days, max rows {}, chunks of {})", maxAgeDays, maxRows, chunkSize);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Archive everything outside the hot window as of now.
+     *
+     * @return Number of messages archived
+     */
+    int archive(LocalDateTime now) throws InterruptedException {
+        LocalDateTime cutoff = maxAgeDays > 0 ? now.minusDays(maxAgeDays) : null;
+        long excess = maxRows > 0 ? repository.count() - maxRows : 0;
+        int archived = 0;
+        MessageCursor after = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<ChatMessageView> oldest = after == null
+                    ? repository.findOldest(Limit.of(chunkSize))
+                    : repository.findOldestAfter(after.sentAt(), after.id(), Limit.of(chunkSize));
+            List<ChatMessageView> chunk = new ArrayList<>(oldest.size());
+            for (ChatMessageView row : oldest) {
+                // Rows come oldest first, so the first one to keep ends the run
+                if (chunk.size() >= excess && (cutoff == null || !row.getSentAt().isBefore(cutoff))) {
+                    break;
+                }
+                chunk.add(row);
+            }
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            long start = System.nanoTime();
+            archive.append(chunk);
+            repository.deleteAllByIdInBatch(chunk.stream().map(ChatMessageView::getId).toList());
+            chunkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            archivedMessages.increment(chunk.size());
+            archived += chunk.size();
+            excess -= chunk.size();
+            after = MessageCursor.of(chunk.get(chunk.size() - 1));
+
+            if (chunk.size() < chunkSize) {
+                // Reached rows that are still in the hot window
+                break;
+            }
+            Thread.sleep(chunkPauseMs);
+        }
+        return archived;
+    }
+
+    private void runSafely() {
+        try {
+            int archived = archive(LocalDateTime.now());
+            if (archived > 0) {
+                log.info("Archived {} messages", archived);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Logged and retried on the next run, the scheduler would stop on an uncaught exception
+            log.error("Message retention run failed", e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.lmg.backend.room;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A named room. Its ID is the room key stored on messages and the suffix of its topic (/topic/room.{id}).
+ */
+@Entity
+@Table(name = "chat_rooms")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatRoom {
+
+    @Id
+    @Column(length = 48)
+    private String id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private String createdBy;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+}
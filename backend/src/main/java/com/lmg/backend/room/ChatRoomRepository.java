@@ -0,0 +1,6 @@
+package com.lmg.backend.room;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ChatRoomRepository extends JpaRepository<ChatRoom, String> {
+}
@@ -0,0 +1,68 @@
+package com.lmg.backend.room;
+
+import com.lmg.backend.config.AuthenticatedUser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named rooms: list the caller's rooms, create a room, add members.
+ * Messages are sent over STOMP to /app/chat.room.{roomId} and received on /topic/room.{roomId}.
+ */
+@RestController
+@RequestMapping("/api/rooms")
+@RequiredArgsConstructor
+public class RoomController {
+
+    private final RoomMembershipService membershipService;
+
+    @GetMapping
+    public List<ChatRoom> myRooms(@AuthenticationPrincipal AuthenticatedUser user) {
+        return membershipService.findRooms(membershipService.roomsOf(user.getUsername()));
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createRoom(@RequestBody Map<String, String> request,
+                                        @AuthenticationPrincipal AuthenticatedUser user) {
+        try {
+            return ResponseEntity.ok(membershipService.createRoom(request.get("id"), request.get("name"), user.getUsername()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(e.getMessage());
+        }
+    }
+
+    /**
+     * Add a user to a room. Only existing members may invite.
+     */
+    @PostMapping("/{roomId}/members")
+    public ResponseEntity<String> addMember(@PathVariable String roomId,
+                                            @RequestBody Map<String, String> request,
+                                            @AuthenticationPrincipal AuthenticatedUser user) {
+        if (!membershipService.isMember(user.getUsername(), roomId)) {
+            return ResponseEntity
+                    .status(HttpStatus.FORBIDDEN)
+                    .body("Not a member of this room");
+        }
+        String username = request.get("username");
+        if (username == null || username.isBlank()) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Username is required");
+        }
+        try {
+            membershipService.addMember(roomId, username);
+            return ResponseEntity.ok("Member added");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(e.getMessage());
+        }
+    }
+}
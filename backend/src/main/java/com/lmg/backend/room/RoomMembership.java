@@ -0,0 +1,34 @@
+package com.lmg.backend.room;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "room_memberships",
+        uniqueConstraints = @UniqueConstraint(name = "uk_room_memberships_room_user", columnNames = {"room_id", "username"}),
+        // Loading a user's rooms is the hot lookup, the unique constraint already covers room -> users
+        indexes = @Index(name = "idx_room_memberships_username", columnList = "username"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RoomMembership {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "room_memberships_seq")
+    @SequenceGenerator(name = "room_memberships_seq", sequenceName = "room_memberships_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "room_id", nullable = false, length = 48)
+    private String roomId;
+
+    @Column(nullable = false)
+    private String username;
+
+    @CreationTimestamp
+    private LocalDateTime joinedAt;
+}
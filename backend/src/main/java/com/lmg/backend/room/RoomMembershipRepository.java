@@ -0,0 +1,14 @@
+package com.lmg.backend.room;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface RoomMembershipRepository extends JpaRepository<RoomMembership, Long> {
+
+    boolean existsByRoomIdAndUsername(String roomId, String username);
+
+    @Query("select m.roomId from RoomMembership m where m.username = :username")
+    List<String> findRoomIdsByUsername(String username);
+}
@@ -0,0 +1,160 @@
+package com.lmg.backend.room;
+
+import com.lmg.backend.chat.ChatRooms;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Who may read and write which room.
+ * - "public" is open to every authenticated user
+ * - a direct conversation is open to its two participants
+ * - a named room is open to its members
+ * Each user's named rooms are loaded once and kept in memory, so the SUBSCRIBE and
+ * send checks do not hit the database. A negative answer is re-checked against the
+ * database because another node may have added the membership.
+ * The rooms of the chat.rooms.cached-users most recently active users are kept; older
+ * entries are dropped and loaded again on their user's next check.
+ */
+@Service
+public class RoomMembershipService {
+
+    private final ChatRoomRepository roomRepository;
+    private final RoomMembershipRepository membershipRepository;
+    private final int cachedUsers;
+
+    // Access-ordered, so the eldest entry is the least recently used; guarded by itself
+    private final Map<String, Set<String>> roomsByUser;
+
+    public RoomMembershipService(ChatRoomRepository roomRepository, RoomMembershipRepository membershipRepository,
+                                 @Value("${chat.rooms.cached-users:10000}") int cachedUsers) {
+        this.roomRepository = roomRepository;
+        this.membershipRepository = membershipRepository;
+        this.cachedUsers = cachedUsers;
+        this.roomsByUser = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                return size() > RoomMembershipService.this.cachedUsers;
+            }
+        };
+    }
+
+    public boolean isMember(String username, String room) {
+        if (username == null || room == null) {
+            return false;
+        }
+        if (ChatRooms.PUBLIC.equals(room)) {
+            return true;
+        }
+        if (ChatRooms.isDirect(room)) {
+            return ChatRooms.participants(room).contains(username);
+        }
+        Set<String> rooms = roomsOf(username);
+        if (rooms.contains(room)) {
+            return true;
+        }
+        if (membershipRepository.existsByRoomIdAndUsername(room, username)) {
+            rooms.add(room);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The isMember check as a predicate that never goes to the database, for filtering many
+     * messages at once (search results). Named rooms are checked against the cached set only.
+     */
+    public Predicate<String> readableBy(String username) {
+        Set<String> rooms = roomsOf(username);
+        return room -> ChatRooms.PUBLIC.equals(room)
+                || (ChatRooms.isDirect(room) ? ChatRooms.participants(room).contains(username) : rooms.contains(room));
+    }
+
+    /**
+     * Named rooms the user belongs to. The returned set is live, do not modify it.
+     */
+    public Set<String> roomsOf(String username) {
+        synchronized (roomsByUser) {
+            Set<String> cached = roomsByUser.get(username);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Loaded outside the lock so one user's query does not hold up everyone else's checks
+        Set<String> rooms = ConcurrentHashMap.newKeySet();
+        rooms.addAll(membershipRepository.findRoomIdsByUsername(username));
+        synchronized (roomsByUser) {
+            Set<String> raced = roomsByUser.putIfAbsent(username, rooms);
+            return raced != null ? raced : rooms;
+        }
+    }
+
+    /**
+     * Create a named room with its creator as the first member.
+     *
+     * @throws IllegalArgumentException if the ID is not a valid room ID or already taken
+     */
+    @Transactional
+    public ChatRoom createRoom(String roomId, String name, String creator) {
+        if (!ChatRooms.isValidRoomId(roomId)) {
+            throw new IllegalArgumentException("Room ID must be 1-48 lowercase letters, digits, '-' or '_'");
+        }
+        if (roomRepository.existsById(roomId)) {
+            throw new IllegalArgumentException("Room Already Exists");
+        }
+        ChatRoom room = roomRepository.save(ChatRoom.builder()
+                .id(roomId)
+                .name(name == null || name.isBlank() ? roomId : name)
+                .createdBy(creator)
+                .build());
+        // A room created in this transaction has no members yet, so this insert cannot collide
+        membershipRepository.save(RoomMembership.builder().roomId(roomId).username(creator).build());
+        cacheMembership(creator, roomId);
+        return room;
+    }
+
+    /**
+     * Add a user to a named room. Adding an existing member is a no-op.
+     * Not transactional itself: the insert runs in its own transaction, so losing a race to a
+     * concurrent add only rolls back that insert instead of marking a caller's transaction rollback-only.
+     *
+     * @throws IllegalArgumentException if the room does not exist
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void addMember(String roomId, String username) {
+        if (!roomRepository.existsById(roomId)) {
+            throw new IllegalArgumentException("Room Not Found");
+        }
+        if (!membershipRepository.existsByRoomIdAndUsername(roomId, username)) {
+            try {
+                membershipRepository.saveAndFlush(RoomMembership.builder().roomId(roomId).username(username).build());
+            } catch (DataIntegrityViolationException e) {
+                // Added concurrently, which is what we wanted anyway
+            }
+        }
+        cacheMembership(username, roomId);
+    }
+
+    private void cacheMembership(String username, String roomId) {
+        Set<String> cached;
+        synchronized (roomsByUser) {
+            cached = roomsByUser.get(username);
+        }
+        if (cached != null) {
+            cached.add(roomId);
+        }
+    }
+
+    public List<ChatRoom> findRooms(Set<String> roomIds) {
+        return roomRepository.findAllById(roomIds);
+    }
+}
@@ -0,0 +1,96 @@
+package com.lmg.backend.room;
+
+import com.lmg.backend.chat.ChatRooms;
+import com.lmg.backend.config.WebSocketConfig;
+import com.lmg.backend.presence.PresenceRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Set;
+
+/**
+ * Only lets a session SUBSCRIBE to the destinations clients are meant to read, so the broker
+ * never fans a room's messages out to anyone else:
+ * - /topic/public and /topic/presence
+ * - /topic/room.{roomId}, for members of the room
+ * - /user/queue/messages, which Spring resolves to the subscriber's own session (direct messages)
+ * Everything else is refused. The simple broker matches SUBSCRIBE destinations as Ant patterns and
+ * broker relays have their own wildcards, so a destination with a pattern character is refused
+ * before anything else is checked; "/topic/**" would otherwise receive every room.
+ * The relay-mode user registry topics carry every node's sessions and undelivered direct messages,
+ * so they are refused by name as well. Clients SEND only to /app: a SEND to a broker destination
+ * would skip the controllers and could forge broadcasts or user registry updates.
+ */
+@Component
+@RequiredArgsConstructor
+public class RoomSubscriptionInterceptor implements ChannelInterceptor {
+
+    static final String DIRECT_SUBSCRIPTION = "/user" + ChatRooms.DIRECT_QUEUE;
+
+    private static final Set<String> OPEN_DESTINATIONS =
+            Set.of(ChatRooms.PUBLIC_TOPIC, PresenceRegistry.PRESENCE_TOPIC, DIRECT_SUBSCRIPTION);
+
+    private static final Set<String> INTERNAL_DESTINATIONS =
+            Set.of(WebSocketConfig.USER_DESTINATION_BROADCAST, WebSocketConfig.USER_REGISTRY_BROADCAST);
+
+    private final RoomMembershipService membershipService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+        // Sent back to the client as a STOMP ERROR frame
+        String destination = accessor.getDestination();
+        if (accessor.getCommand() == StompCommand.SEND) {
+            if (destination == null || !destination.startsWith("/app/")) {
+                throw new AccessDeniedException("Cannot send to " + destination);
+            }
+            return message;
+        }
+        if (accessor.getCommand() != StompCommand.SUBSCRIBE) {
+            return message;
+        }
+
+        if (destination == null || isPattern(destination) || INTERNAL_DESTINATIONS.contains(destination)) {
+            throw new AccessDeniedException("Cannot subscribe to " + destination);
+        }
+        if (OPEN_DESTINATIONS.contains(destination)) {
+            return message;
+        }
+        if (destination.startsWith(ChatRooms.ROOM_TOPIC_PREFIX)) {
+            Principal user = accessor.getUser();
+            String room = destination.substring(ChatRooms.ROOM_TOPIC_PREFIX.length());
+            if (!ChatRooms.isValidRoomId(room) || user == null || !membershipService.isMember(user.getName(), room)) {
+                throw new AccessDeniedException("Not a member of room " + room);
+            }
+            return message;
+        }
+        if (destination.startsWith("/queue")) {
+            throw new AccessDeniedException("Subscribe to " + DIRECT_SUBSCRIPTION + " for direct messages");
+        }
+        throw new AccessDeniedException("Cannot subscribe to " + destination);
+    }
+
+    /**
+     * Ant pattern characters of the simple broker ('*', '?', '{'), and '#' and '*' of broker relays.
+     */
+    private static boolean isPattern(String destination) {
+        for (int i = 0; i < destination.length(); i++) {
+            char c = destination.charAt(i);
+            if (c == '*' || c == '?' || c == '{' || c == '#') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
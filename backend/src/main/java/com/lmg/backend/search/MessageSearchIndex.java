@@ -0,0 +1,391 @@
+package com.lmg.backend.search;
+
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.MessageStore;
+import com.lmg.backend.chat.MessageType;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory inverted index over chat message content, filled from the send path and
+ * rebuilt at startup from the latest chat.search.max-documents stored messages.
+ * Messages are numbered in the order they were indexed; each term maps to an ascending
+ * int array of those numbers, so a query intersects a few primitive arrays instead of
+ * scanning messages. Results are newest first.
+ * Only the latest chat.search.max-documents messages are kept: once full, the oldest quarter
+ * is dropped, the postings are shifted down and rooms and senders no longer referenced are forgotten.
+ * A query examines at most chat.search.max-candidates postings of its rarest term while it holds the
+ * read lock, so a common term with selective filters cannot hold up sends; when it runs out, the page
+ * is returned short (possibly empty) with hasMore and a cursor that continues where it stopped.
+ */
+@Component
+@Slf4j
+public class MessageSearchIndex {
+
+    private static final int REBUILD_BATCH = 1000;
+
+    private final MessageStore messageStore;
+    private final int maxDocuments;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int maxCandidates;
+
+    // Sends take the write lock, queries share the read lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<String, Integer> roomOrdinals = new HashMap<>();
+    private final List<String> rooms = new ArrayList<>();
+    private final Map<String, Integer> senderOrdinals = new HashMap<>();
+
+    private ChatMessageView[] documents = new ChatMessageView[1024];
+    private int[] documentRooms = new int[1024];
+    private int[] documentSenders = new int[1024];
+    private int size;
+    // Global number of documents[0]; grows as old documents are dropped, so cursors stay valid
+    private long base;
+
+    public MessageSearchIndex(MessageStore messageStore,
+                              @Value("${chat.search.max-documents:500000}") int maxDocuments,
+                              @Value("${chat.search.default-page-size:20}") int defaultPageSize,
+                              @Value("${chat.search.max-page-size:50}") int maxPageSize,
+                              @Value("${chat.search.max-candidates:20000}") int maxCandidates) {
+        this.messageStore = messageStore;
+        this.maxDocuments = Math.max(4, maxDocuments);
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxCandidates = Math.max(1, maxCandidates);
+    }
+
+    /**
+     * Index the latest max-documents stored messages again, oldest first. Older ones would be dropped
+     * anyway, so they are not read and startup time does not grow with the message history.
+     * JOIN/LEAVE events count towards the window, so the index can start out with fewer documents.
+     */
+    @PostConstruct
+    public void rebuild() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            roomOrdinals.clear();
+            rooms.clear();
+            senderOrdinals.clear();
+            Arrays.fill(documents, 0, size, null);
+            base += size;
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long afterId = messageStore.idBeforeLatest(maxDocuments);
+        long scanned = 0;
+        List<ChatMessageView> batch;
+        do {
+            batch = messageStore.scan(afterId, REBUILD_BATCH);
+            for (ChatMessageView message : batch) {
+                add(message);
+            }
+            if (!batch.isEmpty()) {
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+            scanned += batch.size();
+        } while (batch.size() == REBUILD_BATCH);
+
+        log.info("Search index built from {} stored messages in {} ms ({} documents, {} terms)", scanned,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), getDocumentCount(), getTermCount());
+    }
+
+    /**
+     * Index one message. JOIN/LEAVE events and messages without any terms are skipped.
+     */
+    public void add(ChatMessageView message) {
+        if (message.getType() != MessageType.CHAT) {
+            return;
+        }
+        // Tokenized before taking the lock, so concurrent sends only serialize on the postings update
+        String[] terms = MessageTokenizer.tokenize(message.getContent());
+        if (terms.length == 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (size == maxDocuments) {
+                dropOldest(maxDocuments / 4);
+            }
+            if (size == documents.length) {
+                int capacity = Math.min(maxDocuments, size * 2);
+                documents = Arrays.copyOf(documents, capacity);
+                documentRooms = Arrays.copyOf(documentRooms, capacity);
+                documentSenders = Arrays.copyOf(documentSenders, capacity);
+            }
+            int document = size++;
+            documents[document] = message;
+            documentRooms[document] = roomOrdinal(message.getRoom());
+            documentSenders[document] = senderOrdinals.computeIfAbsent(message.getSender(), sender -> senderOrdinals.size());
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> new Postings()).add(document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Messages containing every term of the query, newest first.
+     *
+     * @param query Free text, split into terms like message content
+     * @param canRead Which rooms the caller may see; called at most once per room per query and must not block
+     * @param sender Only messages from this user, may be null
+     * @param from Only messages sent at or after this time, may be null
+     * @param to Only messages sent before this time, may be null
+     * @param cursor nextCursor of the previous page, may be null
+     * @param limit Requested page size, clamped to the configured maximum
+     * @throws IllegalArgumentException if the query has no terms or the cursor is malformed
+     */
+    public SearchPage search(String query, Predicate<String> canRead, String sender,
+                             LocalDateTime from, LocalDateTime to, String cursor, Integer limit) {
+        String[] terms = MessageTokenizer.tokenize(query);
+        if (terms.length == 0) {
+            throw new IllegalArgumentException("Search query needs a word of at least "
+                    + MessageTokenizer.MIN_LENGTH + " letters or digits");
+        }
+        long before = cursor == null ? Long.MAX_VALUE : decodeCursor(cursor);
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+
+        List<ChatMessageView> hits = new ArrayList<>(Math.min(pageSize + 1, 64));
+        long last = -1;
+        // Global number just above the first document left unexamined when the candidate budget ran out
+        long resumeBefore = -1;
+        lock.readLock().lock();
+        try {
+            Postings[] lists = new Postings[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                lists[i] = postings.get(terms[i]);
+                if (lists[i] == null) {
+                    return new SearchPage(List.of(), null, false);
+                }
+            }
+            int senderOrdinal = -1;
+            if (sender != null) {
+                Integer ordinal = senderOrdinals.get(sender);
+                if (ordinal == null) {
+                    return new SearchPage(List.of(), null, false);
+                }
+                senderOrdinal = ordinal;
+            }
+            // The rarest term drives the walk, the others are probed by binary search
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+            int[] bounds = new int[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                bounds[i] = lists[i].size;
+            }
+            // 0 = not asked yet, 1 = readable, 2 = not readable
+            byte[] roomAccess = new byte[rooms.size()];
+
+            Postings driver = lists[0];
+            int upper = (int) Math.max(0, Math.min(size, before - base));
+            int examined = 0;
+            for (int i = lowerBound(driver.documents, driver.size, upper) - 1; i >= 0 && hits.size() <= pageSize; i--) {
+                int document = driver.documents[i];
+                if (examined++ == maxCandidates) {
+                    resumeBefore = base + document + 1;
+                    break;
+                }
+                if (!containedInOthers(lists, bounds, document)
+                        || (senderOrdinal >= 0 && documentSenders[document] != senderOrdinal)) {
+                    continue;
+                }
+                ChatMessageView message = documents[document];
+                if ((from != null && message.getSentAt().isBefore(from))
+                        || (to != null && !message.getSentAt().isBefore(to))
+                        || !readable(roomAccess, documentRooms[document], canRead)) {
+                    continue;
+                }
+                if (hits.size() < pageSize) {
+                    last = base + document;
+                }
+                hits.add(message);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (resumeBefore >= 0) {
+            return new SearchPage(hits, Long.toString(resumeBefore), true);
+        }
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits.remove(hits.size() - 1);
+        }
+        return new SearchPage(hits, hits.isEmpty() ? null : Long.toString(last), hasMore);
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether every list other than the driver holds the document. Documents are probed in
+     * descending order, so each list's search range shrinks to below the last probe.
+     */
+    private static boolean containedInOthers(Postings[] lists, int[] bounds, int document) {
+        for (int i = 1; i < lists.length; i++) {
+            int position = lowerBound(lists[i].documents, bounds[i], document);
+            bounds[i] = position;
+            if (position == lists[i].size || lists[i].documents[position] != document) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean readable(byte[] roomAccess, int room, Predicate<String> canRead) {
+        if (roomAccess[room] == 0) {
+            roomAccess[room] = canRead.test(rooms.get(room)) ? (byte) 1 : (byte) 2;
+        }
+        return roomAccess[room] == 1;
+    }
+
+    private int roomOrdinal(String room) {
+        Integer ordinal = roomOrdinals.get(room);
+        if (ordinal == null) {
+            ordinal = rooms.size();
+            rooms.add(room);
+            roomOrdinals.put(room, ordinal);
+        }
+        return ordinal;
+    }
+
+    private void dropOldest(int count) {
+        System.arraycopy(documents, count, documents, 0, size - count);
+        System.arraycopy(documentRooms, count, documentRooms, 0, size - count);
+        System.arraycopy(documentSenders, count, documentSenders, 0, size - count);
+        Arrays.fill(documents, size - count, size, null);
+        size -= count;
+        base += count;
+        for (Iterator<Postings> it = postings.values().iterator(); it.hasNext(); ) {
+            Postings list = it.next();
+            list.dropBelow(count);
+            if (list.size == 0) {
+                it.remove();
+            }
+        }
+        compactOrdinals();
+    }
+
+    /**
+     * Renumber rooms and senders from the documents still kept, forgetting the ones only dropped documents used.
+     */
+    private void compactOrdinals() {
+        List<String> keptRooms = new ArrayList<>();
+        int[] roomMapping = new int[rooms.size()];
+        Arrays.fill(roomMapping, -1);
+        String[] senders = new String[senderOrdinals.size()];
+        senderOrdinals.forEach((sender, ordinal) -> senders[ordinal] = sender);
+        int[] senderMapping = new int[senders.length];
+        Arrays.fill(senderMapping, -1);
+        roomOrdinals.clear();
+        senderOrdinals.clear();
+
+        for (int document = 0; document < size; document++) {
+            int room = documentRooms[document];
+            if (roomMapping[room] < 0) {
+                roomMapping[room] = keptRooms.size();
+                keptRooms.add(rooms.get(room));
+                roomOrdinals.put(rooms.get(room), roomMapping[room]);
+            }
+            documentRooms[document] = roomMapping[room];
+
+            int sender = documentSenders[document];
+            if (senderMapping[sender] < 0) {
+                senderMapping[sender] = senderOrdinals.size();
+                senderOrdinals.put(senders[sender], senderMapping[sender]);
+            }
+            documentSenders[document] = senderMapping[sender];
+        }
+        rooms.clear();
+        rooms.addAll(keptRooms);
+    }
+
+    private static long decodeCursor(String cursor) {
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /**
+     * First position in documents[0, size) holding a value not below target.
+     */
+    private static int lowerBound(int[] documents, int size, int target) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (documents[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Ascending document numbers of one term.
+     */
+    private static final class Postings {
+        private int[] documents = new int[4];
+        private int size;
+
+        void add(int document) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+        }
+
+        /**
+         * Remove the documents below count and renumber the rest to start from zero.
+         */
+        void dropBelow(int count) {
+            int from = lowerBound(documents, size, count);
+            for (int i = from; i < size; i++) {
+                documents[i - from] = documents[i] - count;
+            }
+            size -= from;
+            if (size > 0 && size < documents.length / 4) {
+                documents = Arrays.copyOf(documents, Math.max(4, size * 2));
+            }
+        }
+    }
+}
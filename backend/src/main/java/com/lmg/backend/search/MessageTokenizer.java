@@ -0,0 +1,43 @@
+package com.lmg.backend.search;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits message content and search queries into index terms the same way:
+ * lowercase runs of letters and digits, 2 to 40 characters long, each term once.
+ */
+final class MessageTokenizer {
+
+    static final int MIN_LENGTH = 2;
+    static final int MAX_LENGTH = 40;
+
+    private MessageTokenizer() {
+    }
+
+    static String[] tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return new String[0];
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); ) {
+            int codePoint = i < lower.length() ? lower.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                int length = i - start;
+                if (length >= MIN_LENGTH && length <= MAX_LENGTH) {
+                    terms.add(lower.substring(start, i));
+                }
+                start = -1;
+            }
+            i += i < lower.length() ? Character.charCount(codePoint) : 1;
+        }
+        return terms.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,59 @@
+package com.lmg.backend.search;
+
+import com.lmg.backend.config.AuthenticatedUser;
+import com.lmg.backend.room.RoomMembershipService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.function.Predicate;
+
+/**
+ * Full-text search over the messages the caller can read, newest first.
+ * Every word of q must appear in a message; room, sender and the from/to window
+ * (ISO date-times, from inclusive, to exclusive) narrow the results further.
+ */
+@RestController
+@RequestMapping("/api/search")
+@RequiredArgsConstructor
+public class SearchController {
+
+    private final MessageSearchIndex searchIndex;
+    private final RoomMembershipService membershipService;
+
+    @GetMapping
+    public ResponseEntity<?> search(@RequestParam String q,
+                                    @RequestParam(required = false) String room,
+                                    @RequestParam(required = false) String sender,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                    @RequestParam(required = false) String cursor,
+                                    @RequestParam(required = false) Integer limit,
+                                    @AuthenticationPrincipal AuthenticatedUser user) {
+        Predicate<String> canRead;
+        if (room != null) {
+            if (!membershipService.isMember(user.getUsername(), room)) {
+                return ResponseEntity
+                        .status(HttpStatus.FORBIDDEN)
+                        .body("Not a member of this room");
+            }
+            canRead = room::equals;
+        } else {
+            canRead = membershipService.readableBy(user.getUsername());
+        }
+        try {
+            return ResponseEntity.ok(searchIndex.search(q, canRead, sender, from, to, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.lmg.backend.search;
+
+import com.lmg.backend.chat.ChatMessageView;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of search results, newest message first.
+ * Pass nextCursor back as "cursor" for the following (older) page; hasMore tells whether it has results.
+ * A query that hits the index's candidate budget returns a short page with hasMore set, so keep paging
+ * while hasMore is true even when a page has fewer messages than asked for.
+ */
+@Getter
+@AllArgsConstructor
+public class SearchPage {
+    private List<ChatMessageView> messages;
+    private String nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,42 @@
+package com.lmg.backend.unread;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * How far into a room a user has read: the room's sequence number of the last message they saw.
+ */
+@Entity
+@Table(name = "read_cursors")
+@IdClass(ReadCursor.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReadCursor {
+
+    // Username first, so loading one user's cursors is a primary key range scan
+    @Id
+    private String username;
+
+    @Id
+    @Column(length = 128)
+    private String room;
+
+    @Column(nullable = false)
+    private long readSequence;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+
+        private String username;
+        private String room;
+    }
+}
@@ -0,0 +1,10 @@
+package com.lmg.backend.unread;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ReadCursorRepository extends JpaRepository<ReadCursor, ReadCursor.Key> {
+
+    List<ReadCursor> findByUsername(String username);
+}
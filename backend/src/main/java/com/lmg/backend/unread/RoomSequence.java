@@ -0,0 +1,26 @@
+package com.lmg.backend.unread;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Number of messages ever sent to a room, the position read cursors are measured against.
+ * Written in batches by UnreadService, so it can trail the in-memory count by one flush interval.
+ */
+@Entity
+@Table(name = "room_sequences")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RoomSequence {
+
+    // Room key, see ChatRooms
+    @Id
+    @Column(length = 128)
+    private String room;
+
+    @Column(nullable = false)
+    private long lastSequence;
+}
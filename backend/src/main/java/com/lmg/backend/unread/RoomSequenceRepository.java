@@ -0,0 +1,6 @@
+package com.lmg.backend.unread;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface RoomSequenceRepository extends JpaRepository<RoomSequence, String> {
+}
@@ -0,0 +1,11 @@
+package com.lmg.backend.unread;
+
+/**
+ * Unread state of one room for one user.
+ *
+ * @param room Room key, see ChatRooms
+ * @param unread Messages after the user's read cursor
+ * @param sequence The room's latest sequence number, to pass back when marking the room read
+ */
+public record RoomUnread(String room, long unread, long sequence) {
+}
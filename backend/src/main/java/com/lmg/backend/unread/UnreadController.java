@@ -0,0 +1,48 @@
+package com.lmg.backend.unread;
+
+import com.lmg.backend.config.AuthenticatedUser;
+import com.lmg.backend.room.RoomMembershipService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Unread badges: every room with unread messages in one call, and marking a room read.
+ * Rooms missing from the list have nothing unread.
+ */
+@RestController
+@RequestMapping("/api/unread")
+@RequiredArgsConstructor
+public class UnreadController {
+
+    private final UnreadService unreadService;
+    private final RoomMembershipService membershipService;
+
+    @GetMapping
+    public List<RoomUnread> unread(@AuthenticationPrincipal AuthenticatedUser user) {
+        return unreadService.unreadCounts(user.getUsername());
+    }
+
+    /**
+     * Mark a room read up to a sequence number from a previous GET, or up to its latest message.
+     */
+    @PostMapping("/read")
+    public ResponseEntity<?> markRead(@RequestParam String room,
+                                      @RequestParam(required = false) Long sequence,
+                                      @AuthenticationPrincipal AuthenticatedUser user) {
+        if (!membershipService.isMember(user.getUsername(), room)) {
+            return ResponseEntity
+                    .status(HttpStatus.FORBIDDEN)
+                    .body("Not a member of this room");
+        }
+        return ResponseEntity.ok(unreadService.markRead(user.getUsername(), room, sequence));
+    }
+}
@@ -0,0 +1,413 @@
+package com.lmg.backend.unread;
+
+import com.lmg.backend.chat.ChatRooms;
+import com.lmg.backend.room.RoomMembershipService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Unread counts per user and room.
+ * Every room has a sequence number, the count of messages sent to it, and every user a read cursor
+ * per room holding the sequence they have read up to; unread is the difference. A message therefore
+ * costs one counter increment however many members the room has, plus moving the sender's own cursor.
+ * Both live in memory (a counter per room and per cursor, so senders only contend within a room) and only
+ * the ones that changed are written back every chat.unread.flush-interval-ms, as batched upserts.
+ * A crash loses at most that interval of counting; the messages themselves are unaffected.
+ * A room the user has never read counts all of its messages as unread.
+ * Several nodes can share the tables (relay mode): a flush adds the messages this node counted since the
+ * last one to the stored sequence rather than overwriting it, then takes the stored total back, and a
+ * stored cursor only ever moves forward. Each node's counts are therefore at most one flush interval behind.
+ * The cursors of the chat.unread.cached-users most recently active users are kept in memory. A sender whose
+ * cursors are not among them is not loaded on the send path: the advance is kept as a pending cursor,
+ * written by the next flush and merged in when the user's cursors are loaded for a read.
+ */
+@Service
+@Slf4j
+public class UnreadService {
+
+    // Upserts that combine with what other nodes wrote: sequences add this node's increment, cursors keep the maximum
+    static final String INCREMENT_SEQUENCE_SQL =
+            "MERGE INTO room_sequences t USING (VALUES (CAST(? AS VARCHAR(128)), CAST(? AS BIGINT))) s (room, increment)"
+                    + " ON t.room = s.room"
+                    + " WHEN MATCHED THEN UPDATE SET last_sequence = t.last_sequence + s.increment"
+                    + " WHEN NOT MATCHED THEN INSERT (room, last_sequence) VALUES (s.room, s.increment)";
+    static final String ADVANCE_CURSOR_SQL =
+            "MERGE INTO read_cursors t USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(128)), CAST(? AS BIGINT)))"
+                    + " s (username, room, read_sequence)"
+                    + " ON t.username = s.username AND t.room = s.room"
+                    + " WHEN MATCHED THEN UPDATE SET read_sequence = GREATEST(t.read_sequence, s.read_sequence)"
+                    + " WHEN NOT MATCHED THEN INSERT (username, room, read_sequence) VALUES (s.username, s.room, s.read_sequence)";
+
+    private final RoomSequenceRepository sequenceRepository;
+    private final ReadCursorRepository cursorRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final RoomMembershipService membershipService;
+    private final long flushIntervalMs;
+    private final int batchSize;
+    private final int cachedUsers;
+    private final Timer flushTimer;
+
+    private final Map<String, RoomSequenceCounter> sequences = new ConcurrentHashMap<>();
+    private final Map<String, UserCursors> cursorsByUser = new ConcurrentHashMap<>();
+    // Direct conversations have no membership rows, so their participants are indexed here
+    private final Map<String, Set<String>> directRoomsByUser = new ConcurrentHashMap<>();
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();
+    // Changed cursors by user and room. Holds the cursor itself, so it is still written if its user's cursors are
+    // evicted before the flush, or a pending one for a user whose cursors are not loaded. Updated with compute()
+    // per user, which also covers installing loaded cursors, so an advance cannot slip between the two
+    private final Map<String, Map<String, AtomicLong>> dirtyCursors = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "unread-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public UnreadService(RoomSequenceRepository sequenceRepository, ReadCursorRepository cursorRepository,
+                         JdbcTemplate jdbcTemplate, RoomMembershipService membershipService, MeterRegistry meterRegistry,
+                         @Value("${chat.unread.flush-interval-ms:1000}") long flushIntervalMs,
+                         @Value("${chat.unread.batch-size:500}") int batchSize,
+                         @Value("${chat.unread.cached-users:10000}") int cachedUsers) {
+        this.sequenceRepository = sequenceRepository;
+        this.cursorRepository = cursorRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.membershipService = membershipService;
+        this.flushIntervalMs = flushIntervalMs;
+        this.batchSize = batchSize;
+        this.cachedUsers = cachedUsers;
+        this.flushTimer = Timer.builder("chat.unread.flush")
+                .description("Time to write changed room sequences and read cursors")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Load every room's sequence. Read cursors are loaded per user when first needed.
+     */
+    @PostConstruct
+    void start() {
+        for (RoomSequence row : sequenceRepository.findAll()) {
+            sequences.put(row.getRoom(), newSequence(row.getRoom(), row.getLastSequence()));
+        }
+        log.info("Loaded sequence numbers of {} rooms", sequences.size());
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Count a message that was accepted for a room. The sender has read their own message.
+     *
+     * @param room Room key, see ChatRooms
+     * @param sender Username of the sender, null for an anonymous sender
+     */
+    public void messageSent(String room, String sender) {
+        RoomSequenceCounter sequence = sequences.get(room);
+        if (sequence == null) {
+            sequence = sequences.computeIfAbsent(room, key -> newSequence(key, 0));
+        }
+        long value = sequence.head.incrementAndGet();
+        sequence.unflushed.increment();
+        dirtyRooms.add(room);
+        if (sender != null) {
+            advance(sender, room, value);
+        }
+    }
+
+    /**
+     * Unread counts of every room the user can read that has unread messages.
+     */
+    public List<RoomUnread> unreadCounts(String username) {
+        Set<String> rooms = new LinkedHashSet<>();
+        rooms.add(ChatRooms.PUBLIC);
+        rooms.addAll(membershipService.roomsOf(username));
+        rooms.addAll(directRoomsByUser.getOrDefault(username, Set.of()));
+
+        UserCursors cursors = cursorsOf(username);
+        List<RoomUnread> unread = new ArrayList<>();
+        for (String room : rooms) {
+            RoomUnread state = state(room, cursors);
+            if (state.unread() > 0) {
+                unread.add(state);
+            }
+        }
+        return unread;
+    }
+
+    /**
+     * Move the user's read cursor of a room forward. Cursors never move back.
+     *
+     * @param sequence Sequence number read up to, the room's latest if null
+     * @return The room's unread state after the move
+     */
+    public RoomUnread markRead(String username, String room, Long sequence) {
+        RoomSequenceCounter head = sequences.get(room);
+        long latest = head == null ? 0 : head.head.get();
+        advance(username, room, sequence == null ? latest : Math.min(sequence, latest));
+        return state(room, cursorsOf(username));
+    }
+
+    /**
+     * Room sequences and read cursors changed since the last flush.
+     */
+    public int getPendingCount() {
+        int cursors = 0;
+        for (Map<String, AtomicLong> rooms : dirtyCursors.values()) {
+            cursors += rooms.size();
+        }
+        return dirtyRooms.size() + cursors;
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    /**
+     * Write every changed room sequence and read cursor, then drop the cursors of the least recently
+     * active users beyond chat.unread.cached-users. Rows that fail stay pending for the next round.
+     */
+    synchronized void flush() {
+        long start = System.nanoTime();
+        // Taken out of the dirty sets before their values are read, so a change made meanwhile marks them again
+        List<SequenceIncrement> increments = new ArrayList<>();
+        for (Iterator<String> it = dirtyRooms.iterator(); it.hasNext(); ) {
+            String room = it.next();
+            it.remove();
+            long increment = sequences.get(room).unflushed.sumThenReset();
+            if (increment > 0) {
+                increments.add(new SequenceIncrement(room, increment));
+            }
+        }
+        List<CursorPosition> positions = new ArrayList<>();
+        for (String username : dirtyCursors.keySet()) {
+            Map<String, AtomicLong> rooms = dirtyCursors.remove(username);
+            if (rooms != null) {
+                rooms.forEach((room, cursor) -> positions.add(new CursorPosition(new CursorKey(username, room), cursor.get())));
+            }
+        }
+
+        if (!increments.isEmpty() || !positions.isEmpty()) {
+            int rooms = write(increments, INCREMENT_SEQUENCE_SQL, (ps, increment) -> {
+                ps.setString(1, increment.room());
+                ps.setLong(2, increment.increment());
+            }, increment -> {
+                sequences.get(increment.room()).unflushed.add(increment.increment());
+                dirtyRooms.add(increment.room());
+            });
+            refreshSequences(increments);
+            int cursors = write(positions, ADVANCE_CURSOR_SQL, (ps, position) -> {
+                ps.setString(1, position.key().username());
+                ps.setString(2, position.key().room());
+                ps.setLong(3, position.sequence());
+            }, position -> markDirty(position.key().username(), position.key().room(), new AtomicLong(position.sequence())));
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.debug("Wrote {} room sequences and {} read cursors", rooms, cursors);
+        }
+        evictCursors();
+    }
+
+    /**
+     * Write the rows in batches. On a failure the failed batch and every row after it are handed to restore.
+     *
+     * @return Number of rows written
+     */
+    private <K> int write(List<K> rows, String sql, ParameterizedPreparedStatementSetter<K> setter, Consumer<K> restore) {
+        int written = 0;
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<K> batch = rows.subList(from, Math.min(rows.size(), from + batchSize));
+            try {
+                jdbcTemplate.batchUpdate(sql, batch, batch.size(), setter);
+                written += batch.size();
+            } catch (DataAccessException e) {
+                rows.subList(from, rows.size()).forEach(restore);
+                log.error("Failed to write {} unread counters, retrying in {} ms", rows.size() - from, flushIntervalMs, e);
+                break;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Take the stored totals of the rooms just written, which include what other nodes counted.
+     * A sequence only moves forward, so a refresh racing with new messages never loses any.
+     */
+    private void refreshSequences(List<SequenceIncrement> increments) {
+        if (increments.isEmpty()) {
+            return;
+        }
+        try {
+            for (RoomSequence row : sequenceRepository.findAllById(increments.stream().map(SequenceIncrement::room).toList())) {
+                RoomSequenceCounter sequence = sequences.get(row.getRoom());
+                sequence.head.accumulateAndGet(row.getLastSequence() + sequence.unflushed.sum(), Math::max);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to read back {} room sequences", increments.size(), e);
+        }
+    }
+
+    /**
+     * Forget the cursors of the least recently active users beyond the limit, down to 90% of it.
+     * Their pending cursors were just written, or are still held in dirtyCursors if the write failed.
+     */
+    private void evictCursors() {
+        if (cursorsByUser.size() <= cachedUsers) {
+            return;
+        }
+        int excess = cursorsByUser.size() - cachedUsers * 9 / 10;
+        cursorsByUser.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastUsed))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(cursorsByUser::remove);
+    }
+
+    private RoomUnread state(String room, UserCursors cursors) {
+        RoomSequenceCounter head = sequences.get(room);
+        AtomicLong cursor = cursors.byRoom.get(room);
+        long latest = head == null ? 0 : head.head.get();
+        long read = cursor == null ? 0 : cursor.get();
+        return new RoomUnread(room, Math.max(0, latest - read), latest);
+    }
+
+    /**
+     * Move a cursor forward. Cursors that are not loaded are not loaded for this: the position goes into
+     * dirtyCursors as a pending cursor, so the send path never waits for a read of the cursor table.
+     */
+    private void advance(String username, String room, long sequence) {
+        UserCursors cursors = cursorsByUser.get(username);
+        if (cursors != null) {
+            advance(cursors, username, room, sequence);
+            cursors.lastUsed = System.nanoTime();
+            return;
+        }
+        dirtyCursors.compute(username, (user, rooms) -> {
+            // Installed meanwhile: loadCursors takes the same bin, so checking again here is enough
+            UserCursors loaded = cursorsByUser.get(user);
+            if (loaded != null) {
+                advance(loaded, user, room, sequence);
+                return rooms;
+            }
+            Map<String, AtomicLong> pending = rooms == null ? new ConcurrentHashMap<>() : rooms;
+            pending.computeIfAbsent(room, key -> new AtomicLong()).accumulateAndGet(sequence, Math::max);
+            return pending;
+        });
+    }
+
+    private void advance(UserCursors cursors, String username, String room, long sequence) {
+        AtomicLong cursor = cursors.byRoom.computeIfAbsent(room, key -> new AtomicLong());
+        long previous = cursor.getAndAccumulate(sequence, Math::max);
+        if (sequence > previous) {
+            markDirty(username, room, cursor);
+        }
+    }
+
+    /**
+     * Queue a cursor for the next flush, keeping the further of it and one already queued for the room.
+     */
+    private void markDirty(String username, String room, AtomicLong cursor) {
+        dirtyCursors.compute(username, (user, rooms) -> {
+            Map<String, AtomicLong> dirty = rooms == null ? new ConcurrentHashMap<>() : rooms;
+            dirty.merge(room, cursor, UnreadService::further);
+            return dirty;
+        });
+    }
+
+    private UserCursors cursorsOf(String username) {
+        UserCursors cursors = cursorsByUser.get(username);
+        if (cursors == null) {
+            cursors = loadCursors(username);
+        }
+        cursors.lastUsed = System.nanoTime();
+        return cursors;
+    }
+
+    /**
+     * Read a user's stored cursors, outside any map lock, and install them with their pending ones merged in.
+     * The pending ones are taken both before the read and at the install, so a flush that writes them
+     * in between cannot leave the loaded cursors behind.
+     */
+    private UserCursors loadCursors(String username) {
+        Map<String, AtomicLong> pendingBefore = Map.copyOf(dirtyCursors.getOrDefault(username, Map.of()));
+        UserCursors loaded = new UserCursors();
+        for (ReadCursor row : cursorRepository.findByUsername(username)) {
+            loaded.byRoom.put(row.getRoom(), new AtomicLong(row.getReadSequence()));
+        }
+        pendingBefore.forEach((room, pending) -> loaded.byRoom.merge(room, new AtomicLong(pending.get()), UnreadService::further));
+
+        UserCursors[] installed = new UserCursors[1];
+        dirtyCursors.compute(username, (user, rooms) -> {
+            if (rooms != null) {
+                rooms.forEach((room, pending) -> loaded.byRoom.merge(room, new AtomicLong(pending.get()), UnreadService::further));
+            }
+            UserCursors existing = cursorsByUser.putIfAbsent(user, loaded);
+            installed[0] = existing == null ? loaded : existing;
+            return rooms;
+        });
+        return installed[0];
+    }
+
+    private static AtomicLong further(AtomicLong current, AtomicLong other) {
+        return current.get() >= other.get() ? current : other;
+    }
+
+    private RoomSequenceCounter newSequence(String room, long value) {
+        if (ChatRooms.isDirect(room)) {
+            for (String user : ChatRooms.participants(room)) {
+                directRoomsByUser.computeIfAbsent(user, key -> ConcurrentHashMap.newKeySet()).add(room);
+            }
+        }
+        return new RoomSequenceCounter(value);
+    }
+
+    /**
+     * A room's sequence as this node knows it, and how much of it has not been added to the stored row yet.
+     * Every message needs its own sequence number back for the sender's cursor, so the head stays a single
+     * atomic; the unflushed count is only summed by the flush and is striped across senders.
+     */
+    private static final class RoomSequenceCounter {
+        private final AtomicLong head;
+        private final LongAdder unflushed = new LongAdder();
+
+        RoomSequenceCounter(long value) {
+            this.head = new AtomicLong(value);
+        }
+    }
+
+    private static final class UserCursors {
+        private final Map<String, AtomicLong> byRoom = new ConcurrentHashMap<>();
+        // System.nanoTime() of the last use, for picking the users to evict
+        private volatile long lastUsed;
+    }
+
+    private record CursorKey(String username, String room) {
+    }
+
+    private record CursorPosition(CursorKey key, long sequence) {
+    }
+
+    private record SequenceIncrement(String room, long increment) {
+    }
+}
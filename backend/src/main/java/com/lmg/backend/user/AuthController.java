@@ -1,55 +1,108 @@
 package com.lmg.backend.user;
 
-import com.lmg.backend.chat.ChatMessage;
+import com.lmg.backend.chat.ChatRooms;
+import com.lmg.backend.chat.MessageHistoryService;
+import com.lmg.backend.config.AuthenticatedUser;
 import com.lmg.backend.config.JwtService;
+import com.lmg.backend.config.LoginRateLimiter;
+import com.lmg.backend.config.PasswordHashingService;
+import com.lmg.backend.room.RoomMembershipService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/auth")
 @RequiredArgsConstructor
 public class AuthController {
 
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final LoginRateLimiter rateLimiter;
     private final UserRepository userRepository;
     private final JwtService jwtService;
+    private final MessageHistoryService messageHistoryService;
+    private final RoomMembershipService membershipService;
 
 
     @PostMapping("/register")
-    public ResponseEntity<String> register(@RequestBody RegisterRequest request) {
-        //Check if username already exists
-        if(userRepository.existsByUsername(request.getUsername())){
-            return ResponseEntity
-                    .status(HttpStatus.BAD_REQUEST)
-                    .body("UserName Already Exists");
+    public CompletableFuture<ResponseEntity<String>> register(@RequestBody RegisterRequest request,
+                                                              HttpServletRequest httpRequest) {
+        long retryAfter = rateLimiter.tryAcquire(httpRequest.getRemoteAddr(), null);
+        if (retryAfter > 0) {
+            return CompletableFuture.completedFuture(tooManyRequests(retryAfter));
         }
 
-        //check if email already exists
-        if(userRepository.existsByEmail(request.getEmail())){
-            return ResponseEntity
+        //one indexed lookup turns away the common duplicate before it costs a BCrypt hash, and says which column it was
+        String conflict = conflictOf(request.getUsername(), request.getEmail());
+        if (conflict != null) {
+            return CompletableFuture.completedFuture(ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
-                    .body("Email Already Exists");
+                    .body(conflict));
         }
 
-        //hash password
-        String hashedPassword = passwordEncoder.encode(request.getPassword());
-
-        //create user
-        User user = User.builder()
-                .username(request.getUsername())
-                .email(request.getEmail())
-                .password(hashedPassword)
-                .build();
+        //hash password on the hashing pool, then create the user on its completion pool
+        try {
+            return passwordHashingService.encode(request.getPassword()).thenApply(hashedPassword -> {
+                User user = User.builder()
+                        .username(request.getUsername())
+                        .email(request.getEmail())
+                        .password(hashedPassword)
+                        .build();
+
+                //the unique constraints still catch a concurrent registration of the same username/email
+                try {
+                    userRepository.saveAndFlush(user);
+                } catch (DataIntegrityViolationException e) {
+                    return ResponseEntity
+                            .status(HttpStatus.BAD_REQUEST)
+                            .body(duplicateMessage(e, request.getUsername(), request.getEmail()));
+                }
+
+                return ResponseEntity.ok("User Registered successfully");
+            });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(serviceBusy());
+        }
+    }
 
-        userRepository.save(user);
+    /**
+     * Which unique constraint a failed insert hit, read from the constraint name in the error.
+     * Falls back to a single lookup if the driver did not report a name.
+     */
+    private String duplicateMessage(DataIntegrityViolationException e, String username, String email) {
+        String constraint = e.getCause() instanceof ConstraintViolationException violation
+                ? violation.getConstraintName() : null;
+        String detail = (constraint != null ? constraint : e.getMostSpecificCause().getMessage()).toLowerCase(Locale.ROOT);
+        if (detail.contains(User.USERNAME_CONSTRAINT)) {
+            return "UserName Already Exists";
+        }
+        if (detail.contains(User.EMAIL_CONSTRAINT)) {
+            return "Email Already Exists";
+        }
+        String conflict = conflictOf(username, email);
+        return conflict != null ? conflict : "UserName Already Exists";
+    }
 
-        return ResponseEntity.ok("User Registered successfully");
+    /**
+     * The error for a username or email that is already taken, null if both are free.
+     */
+    private String conflictOf(String username, String email) {
+        List<Boolean> usernameMatches = userRepository.findUsernameMatches(username, email);
+        if (usernameMatches.isEmpty()) {
+            return null;
+        }
+        return usernameMatches.contains(Boolean.TRUE) ? "UserName Already Exists" : "Email Already Exists";
     }
 
     @GetMapping("/test-protected")
@@ -57,37 +110,82 @@ public class AuthController {
         return ResponseEntity.ok("You are authenticated");
     }
 
+    /**
+     * Keyset-paginated message history of one room (the public room by default).
+     * Without a cursor returns the latest page; pass the returned nextCursor as
+     * "before" to scroll back or as "after" to catch up after a reconnect.
+     */
     @GetMapping("/messages")
-    public ResponseEntity<List<ChatMessage>> getMessages() {
-        // This would return all messages from repository
-        return ResponseEntity.ok(new ArrayList<>());
+    public ResponseEntity<?> getMessages(@RequestParam(defaultValue = ChatRooms.PUBLIC) String room,
+                                         @RequestParam(required = false) String before,
+                                         @RequestParam(required = false) String after,
+                                         @RequestParam(required = false) Integer limit,
+                                         @AuthenticationPrincipal AuthenticatedUser user) {
+        if (user == null || !membershipService.isMember(user.getUsername(), room)) {
+            return ResponseEntity
+                    .status(HttpStatus.FORBIDDEN)
+                    .body("Not a member of this room");
+        }
+        try {
+            return ResponseEntity.ok(messageHistoryService.getPage(room, before, after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(e.getMessage());
+        }
     }
 
 
 
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest request){
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody LoginRequest request, HttpServletRequest httpRequest){
+        long retryAfter = rateLimiter.tryAcquire(httpRequest.getRemoteAddr(), request.getEmail());
+        if (retryAfter > 0) {
+            return CompletableFuture.completedFuture(tooManyRequests(retryAfter));
+        }
+
         //Find User by email
         User user = userRepository.findByEmail(request.getEmail())
                 .orElse(null);
 
         //check if user exists
         if(user == null){
-            return ResponseEntity
+            return CompletableFuture.completedFuture(ResponseEntity
                     .status(HttpStatus.UNAUTHORIZED)
-                    .body("Invalid email");
+                    .body("Invalid email"));
         }
 
-        //verify password
-        if(!passwordEncoder.matches(request.getPassword(), user.getPassword())){
-            return ResponseEntity
-                    .status(HttpStatus.UNAUTHORIZED)
-                    .body("Invalid password");
+        //verify password on the hashing pool, then sign the token on its completion pool
+        try {
+            return passwordHashingService.matches(request.getPassword(), user.getPassword()).thenApply(matches -> {
+                if(!matches){
+                    return ResponseEntity
+                            .status(HttpStatus.UNAUTHORIZED)
+                            .body("Invalid password");
+                }
+                String token = jwtService.generateToken(AuthenticatedUser.from(user));
+                LoginResponse response = new LoginResponse(token, user.getEmail(), user.getUsername());
+
+                return ResponseEntity.ok(response);
+            });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(serviceBusy());
         }
-        String token = jwtService.generateToken(user.getEmail());
-        LoginResponse response = new LoginResponse(token, user.getEmail(), user.getUsername());
+    }
+
+    private static <T> ResponseEntity<T> tooManyRequests(long retryAfterSeconds) {
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .build();
+    }
 
-        return ResponseEntity.ok(response);
+    private static <T> ResponseEntity<T> serviceBusy() {
+        // The hashing queue is full; shed the request instead of queueing it behind the storm
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
     }
 }
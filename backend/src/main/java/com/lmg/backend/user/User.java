@@ -1,5 +1,6 @@
 package com.lmg.backend.user;
 
+import com.lmg.backend.config.UserCacheEvictionListener;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -8,7 +9,12 @@ import java.time.LocalDateTime;
 
 
 @Entity
-@Table(name = "users")//  user is reserved in SQL
+@Table(name = "users", uniqueConstraints = {//  user is reserved in SQL
+        // Named so AuthController.register can tell which one a duplicate sign-up hit
+        @UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "username"),
+        @UniqueConstraint(name = User.EMAIL_CONSTRAINT, columnNames = "email")
+})
+@EntityListeners(UserCacheEvictionListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -16,14 +22,19 @@ import java.time.LocalDateTime;
 @Builder
 public class User {
 
+    public static final String USERNAME_CONSTRAINT = "uk_users_username";
+    public static final String EMAIL_CONSTRAINT = "uk_users_email";
+
+    // Sequence IDs (instead of IDENTITY) let Hibernate batch inserts in saveAll
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String username;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String email;
 
     @Column(nullable = false, length = 60)
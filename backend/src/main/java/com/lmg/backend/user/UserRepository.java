@@ -1,13 +1,22 @@
 package com.lmg.backend.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     // That's it! Spring provides all basic methods automatically
     boolean existsByUsername(String username);
-    boolean existsByEmail(String email);
+
+    /**
+     * One entry per user holding the username or the email: true where the username matched.
+     * Empty when both are free, so a sign-up is checked and its error chosen with one query.
+     */
+    @Query("select case when u.username = :username then true else false end from User u"
+            + " where u.username = :username or u.email = :email")
+    List<Boolean> findUsernameMatches(String username, String email);
 
     Optional<User> findByEmail(String email);
 
@@ -0,0 +1,137 @@
+package com.lmg.backend.broker;
+
+import com.lmg.backend.broker.EmbeddedStompBroker.Frame;
+import com.lmg.backend.broker.EmbeddedStompBroker.StompFrameCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddedStompBrokerTests {
+
+    private EmbeddedStompBroker broker;
+
+    @BeforeEach
+    void setUp() {
+        broker = new EmbeddedStompBroker(0, "127.0.0.1", 1024);
+        broker.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        broker.stop();
+    }
+
+    @Test
+    void fansOutSendToEverySubscriberOfTheDestination() throws Exception {
+        try (Client alice = new Client(); Client bob = new Client(); Client carol = new Client()) {
+            alice.subscribe("sub-a", "/topic/public");
+            bob.subscribe("sub-b", "/topic/public");
+            carol.subscribe("sub-c", "/topic/other");
+
+            alice.write(new Frame("SEND", Map.of("destination", "/topic/public", "content-type", "application/json"),
+                    "{\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8)));
+
+            for (Client client : new Client[]{alice, bob}) {
+                Frame message = client.read();
+                assertThat(message.command()).isEqualTo("MESSAGE");
+                assertThat(message.headers()).containsEntry("destination", "/topic/public")
+                        .containsEntry("content-type", "application/json");
+                assertThat(new String(message.body(), StandardCharsets.UTF_8)).isEqualTo("{\"content\":\"hi\"}");
+            }
+            assertThat(bob.lastSubscriptionHeader()).isEqualTo("sub-b");
+
+            // carol only hears about her own destination; the receipt proves nothing else was queued before it
+            carol.write(new Frame("SEND", Map.of("destination", "/topic/other", "receipt", "r1"), new byte[0]));
+            assertThat(carol.read().command()).isEqualTo("MESSAGE");
+            assertThat(carol.read().headers()).containsEntry("receipt-id", "r1");
+        }
+    }
+
+    @Test
+    void escapesHeaderValuesRoundTrip() throws Exception {
+        Frame frame = new Frame("SEND", Map.of("destination", "/topic/a:b", "note", "line1\nline2\\"), new byte[0]);
+
+        InputStream in = new ByteArrayInputStream(StompFrameCodec.encode(frame));
+        Frame decoded = StompFrameCodec.read(in, 1024);
+
+        assertThat(decoded.headers()).containsEntry("destination", "/topic/a:b")
+                .containsEntry("note", "line1\nline2\\");
+    }
+
+    @Test
+    void rejectsInvalidAndOversizedFrames() {
+        for (String frame : new String[]{
+                "SEND\ndestination:/topic/a\ncontent-length:abc\n\n\0",
+                "SEND\ndestination:/topic/a\ncontent-length:-1\n\n\0",
+                "SEND\ndestination:/topic/a\ncontent-length:2048\n\n\0",
+                "SEND\ndestination:/topic/a\n\n" + "x".repeat(2048) + "\0",
+                "SEND\ndestination:/topic/" + "a".repeat(StompFrameCodec.MAX_LINE_BYTES) + "\n\n\0"}) {
+            InputStream in = new ByteArrayInputStream(frame.getBytes(StandardCharsets.UTF_8));
+            assertThatThrownBy(() -> StompFrameCodec.read(in, 1024))
+                    .isInstanceOf(EmbeddedStompBroker.MalformedFrameException.class);
+        }
+    }
+
+    @Test
+    void answersAnInvalidFrameWithAnError() throws Exception {
+        try (Client client = new Client()) {
+            client.socket.getOutputStream().write("SEND\ndestination:/topic/a\ncontent-length:-1\n\n\0"
+                    .getBytes(StandardCharsets.UTF_8));
+
+            Frame error = client.read();
+            assertThat(error.command()).isEqualTo("ERROR");
+            assertThat(error.headers().get("message")).contains("content-length");
+        }
+    }
+
+    private final class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final InputStream in;
+        private String lastSubscription;
+
+        Client() throws IOException {
+            socket = new Socket("127.0.0.1", broker.getPort());
+            socket.setSoTimeout(5000);
+            in = new BufferedInputStream(socket.getInputStream());
+            write(new Frame("CONNECT", Map.of("accept-version", "1.2", "host", "localhost"), new byte[0]));
+            assertThat(read().command()).isEqualTo("CONNECTED");
+        }
+
+        void subscribe(String id, String destination) throws IOException {
+            write(new Frame("SUBSCRIBE", Map.of("id", id, "destination", destination, "receipt", id), new byte[0]));
+            assertThat(read().command()).isEqualTo("RECEIPT");
+        }
+
+        void write(Frame frame) throws IOException {
+            socket.getOutputStream().write(StompFrameCodec.encode(frame));
+            socket.getOutputStream().flush();
+        }
+
+        Frame read() throws IOException {
+            Frame frame = StompFrameCodec.read(in, 1024);
+            lastSubscription = frame.headers().get("subscription");
+            return frame;
+        }
+
+        String lastSubscriptionHeader() {
+            return lastSubscription;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
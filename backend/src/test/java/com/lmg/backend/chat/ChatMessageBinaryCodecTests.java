@@ -0,0 +1,67 @@
+package com.lmg.backend.chat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatMessageBinaryCodecTests {
+
+    @Test
+    void roundTripsEveryField() {
+        ChatMessageView message = new ChatMessageView(42L, "team", "alice", "héllo " + "x".repeat(300),
+                MessageType.CHAT, LocalDateTime.of(2025, 1, 1, 12, 0, 0, 123_456_000));
+
+        ChatMessageView decoded = ChatMessageBinaryCodec.decode(ChatMessageBinaryCodec.encode(message));
+
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(message);
+    }
+
+    @Test
+    void leavesOutAbsentFields() {
+        ChatMessageView leave = new ChatMessageView(null, "public", "bob", null, MessageType.LEAVE, null);
+
+        byte[] bytes = ChatMessageBinaryCodec.encode(leave);
+
+        // header + "public" + "bob"
+        assertThat(bytes).hasSize(3 + 1 + 6 + 1 + 3);
+        assertThat(ChatMessageBinaryCodec.decode(bytes)).usingRecursiveComparison().isEqualTo(leave);
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        byte[] bytes = ChatMessageBinaryCodec.encode(
+                new ChatMessageView(1L, "public", "alice", "hi", MessageType.CHAT, LocalDateTime.now()));
+
+        assertThatThrownBy(() -> ChatMessageBinaryCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void converterOnlyAppliesToItsOwnContentType() {
+        ChatMessageBinaryConverter converter = new ChatMessageBinaryConverter();
+        byte[] binary = ChatMessageBinaryCodec.encode(
+                new ChatMessageView(null, null, "alice", "hi", MessageType.CHAT, null));
+
+        ChatMessage fromBinary = (ChatMessage) converter.fromMessage(
+                message(binary, ChatMessageBinaryCodec.MIME_TYPE.toString()), ChatMessage.class);
+        assertThat(fromBinary.getContent()).isEqualTo("hi");
+
+        assertThat(converter.fromMessage(message(binary, MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE), ChatMessage.class))
+                .isNull();
+        assertThat(converter.fromMessage(message("{}".getBytes(StandardCharsets.UTF_8),
+                MimeTypeUtils.APPLICATION_JSON_VALUE), ChatMessage.class)).isNull();
+    }
+
+    private static Message<byte[]> message(byte[] payload, String contentType) {
+        return MessageBuilder.withPayload(payload).setHeader(MessageHeaders.CONTENT_TYPE, contentType).build();
+    }
+}
@@ -0,0 +1,139 @@
+package com.lmg.backend.chat;
+
+import com.lmg.backend.retention.MessageArchive;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+// Reads through the jdbc store; rows are put straight into the table and archive, so the recent-message cache misses
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:message-history-tests",
+        "chat.retention.enabled=false"
+})
+class MessageHistoryServiceTests {
+
+    @TempDir
+    static Path archiveDirectory;
+
+    @DynamicPropertySource
+    static void archiveDirectory(DynamicPropertyRegistry registry) {
+        registry.add("chat.retention.archive.dir", archiveDirectory::toString);
+    }
+
+    private static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+
+    @Autowired
+    private MessageHistoryService historyService;
+
+    @Autowired
+    private MessageArchive archive;
+
+    @Autowired
+    private MessageStore messageStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private MessageWriteBehindQueue writeBehindQueue;
+
+    @Test
+    void pagesThroughMessagesSentInTheSameMicrosecond() {
+        for (long id = 1; id <= 5; id++) {
+            insert(message(id, "ties", NOW));
+        }
+        insert(message(6, "elsewhere", NOW));
+
+        MessageHistoryPage newest = historyService.getPage("ties", null, null, 2);
+        assertThat(ids(newest)).containsExactly(4L, 5L);
+        assertThat(newest.isHasMore()).isTrue();
+        MessageHistoryPage middle = historyService.getPage("ties", newest.getNextCursor(), null, 2);
+        assertThat(ids(middle)).containsExactly(2L, 3L);
+        MessageHistoryPage oldest = historyService.getPage("ties", middle.getNextCursor(), null, 2);
+        assertThat(ids(oldest)).containsExactly(1L);
+        assertThat(oldest.isHasMore()).isFalse();
+
+        MessageHistoryPage forward = historyService.getPage("ties", null, oldest.getNextCursor(), 2);
+        assertThat(ids(forward)).containsExactly(2L, 3L);
+        assertThat(ids(historyService.getPage("ties", null, forward.getNextCursor(), 10))).containsExactly(4L, 5L);
+    }
+
+    @Test
+    void continuesIntoTheArchiveInBothDirections() {
+        LocalDateTime lastWeek = NOW.minusDays(7);
+        archive.append(List.of(message(10, "archived", lastWeek), message(11, "archived", lastWeek.plusMinutes(1)),
+                message(12, "archived", lastWeek.plusMinutes(2))));
+        // 12 was archived but not deleted yet, as after a retention run that stopped between the two
+        insert(message(12, "archived", lastWeek.plusMinutes(2)));
+        insert(message(20, "archived", NOW.minusMinutes(2)));
+        insert(message(21, "archived", NOW.minusMinutes(1)));
+
+        MessageHistoryPage newest = historyService.getPage("archived", null, null, 3);
+        assertThat(ids(newest)).containsExactly(12L, 20L, 21L);
+        MessageHistoryPage older = historyService.getPage("archived", newest.getNextCursor(), null, 3);
+        assertThat(ids(older)).containsExactly(10L, 11L);
+        assertThat(older.isHasMore()).isFalse();
+
+        String fromFirst = MessageCursor.of(message(10, "archived", lastWeek)).encode();
+        assertThat(ids(historyService.getPage("archived", null, fromFirst, 10))).containsExactly(11L, 12L, 20L, 21L);
+    }
+
+    @Test
+    void catchesUpOnMessagesTheWriteBehindHasNotWritten() {
+        insert(message(30, "catch-up", NOW.minusSeconds(3)));
+        insert(message(32, "catch-up", NOW.minusSeconds(1)));
+        // 31 is still waiting for its batch; 32 is reported too, having been written in between
+        when(writeBehindQueue.findUnwrittenAfter(eq("catch-up"), any(), anyInt()))
+                .thenReturn(List.of(message(31, "catch-up", NOW.minusSeconds(2)), message(32, "catch-up", NOW.minusSeconds(1))));
+
+        String cursor = MessageCursor.of(message(29, "catch-up", NOW.minusSeconds(4))).encode();
+        MessageHistoryPage page = historyService.getPage("catch-up", null, cursor, 10);
+
+        assertThat(ids(page)).containsExactly(30L, 31L, 32L);
+        assertThat(ids(historyService.getPage("catch-up", null, cursor, 2))).containsExactly(30L, 31L);
+    }
+
+    @Test
+    void startsARebuildScanAtTheLatestRows() {
+        // Above the IDs of the other tests, which share the table
+        for (long id = 1_000_001; id <= 1_000_005; id++) {
+            insert(message(id, "rebuild", NOW));
+        }
+
+        long afterId = messageStore.idBeforeLatest(2);
+        assertThat(afterId).isEqualTo(1_000_003L);
+        assertThat(messageStore.scan(afterId, 10)).extracting(ChatMessageView::getId).containsExactly(1_000_004L, 1_000_005L);
+        assertThat(messageStore.idBeforeLatest(1_000_000)).isZero();
+    }
+
+    private void insert(ChatMessageView message) {
+        jdbcTemplate.update("INSERT INTO messages (id, room, content, sender, type, sent_at) VALUES (?, ?, ?, ?, ?, ?)",
+                message.getId(), message.getRoom(), message.getContent(), message.getSender(),
+                message.getType().name(), Timestamp.valueOf(message.getSentAt()));
+    }
+
+    private static ChatMessageView message(long id, String room, LocalDateTime sentAt) {
+        return new ChatMessageView(id, room, "alice", "message " + id, MessageType.CHAT, sentAt);
+    }
+
+    private static List<Long> ids(MessageHistoryPage page) {
+        return page.getMessages().stream().map(ChatMessageView::getId).toList();
+    }
+}
@@ -0,0 +1,235 @@
+package com.lmg.backend.chat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageWriteBehindQueueTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong ids = new AtomicLong();
+    private JdbcTemplate jdbcTemplate;
+    private MessageWriteBehindQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:write-behind-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = spy(new JdbcTemplate(dataSource));
+        jdbcTemplate.execute("CREATE TABLE messages (id BIGINT PRIMARY KEY, room VARCHAR(128) NOT NULL,"
+                + " content VARCHAR(255), sender VARCHAR(255), type VARCHAR(16), sent_at TIMESTAMP(6))");
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.stop();
+    }
+
+    @Test
+    void writesAFullBatchWithOneInsert() {
+        queue = start(3, 10);
+        for (int i = 0; i < 3; i++) {
+            queue.enqueue(message("m" + i));
+        }
+
+        awaitStored(3);
+        verify(jdbcTemplate).batchUpdate(eq(MessageWriteBehindQueue.INSERT_SQL), anyList(), eq(3), any());
+        assertThat(queue.findUnwrittenAfter("public", new MessageCursor(LocalDateTime.MIN, 0), 10)).isEmpty();
+    }
+
+    @Test
+    void retriesABatchThatWasWrittenBeforeItFailed() {
+        // The first attempt reaches the table but reports a failure, so every retry finds the rows already there
+        AtomicBoolean failed = new AtomicBoolean();
+        doAnswer(invocation -> {
+            Object written = invocation.callRealMethod();
+            if (failed.compareAndSet(false, true)) {
+                throw new QueryTimeoutException("lost the reply");
+            }
+            return written;
+        }).when(jdbcTemplate).batchUpdate(eq(MessageWriteBehindQueue.INSERT_SQL), anyList(), anyInt(), any());
+        queue = start(2, 10);
+        queue.enqueue(message("m0"));
+        queue.enqueue(message("m1"));
+
+        awaitFlushed();
+        // One attempt and two retries, then each row on its own; both rows match what is stored
+        verify(jdbcTemplate, times(3)).batchUpdate(eq(MessageWriteBehindQueue.INSERT_SQL), anyList(), anyInt(), any());
+        assertThat(stored()).containsExactly("m0", "m1");
+        assertThat(meterRegistry.counter("chat.messages.write.failed").count()).isZero();
+    }
+
+    @Test
+    void neverOverwritesAnotherMessageWithTheSameId() {
+        jdbcTemplate.update("INSERT INTO messages (id, room, content, sender, type, sent_at) VALUES (2, 'public', 'older', 'bob', 'CHAT', ?)",
+                Timestamp.valueOf(LocalDateTime.now().minusDays(1)));
+        queue = start(3, 10);
+        for (int i = 0; i < 3; i++) {
+            queue.enqueue(message("m" + i));
+        }
+
+        awaitFlushed();
+        assertThat(stored()).containsExactly("m0", "older", "m2");
+        assertThat(meterRegistry.counter("chat.messages.write.failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void reportsMessagesOfARoomThatAreNotWrittenYet() {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return invocation.callRealMethod();
+        }).when(jdbcTemplate).batchUpdate(eq(MessageWriteBehindQueue.INSERT_SQL), anyList(), anyInt(), any());
+        queue = start(3, 10);
+        try {
+            ChatMessage first = queue.enqueue(message("m0"));
+            ChatMessage other = message("m1");
+            other.setRoom("team");
+            queue.enqueue(other);
+            queue.enqueue(message("m2"));
+
+            assertThat(queue.findUnwrittenAfter("public", MessageCursor.of(ChatMessageView.from(first)), 10))
+                    .extracting(ChatMessageView::getContent).containsExactly("m2");
+        } finally {
+            release.countDown();
+        }
+        awaitFlushed();
+        assertThat(queue.findUnwrittenAfter("public", new MessageCursor(LocalDateTime.MIN, 0), 10)).isEmpty();
+    }
+
+    @Test
+    void drainsTheQueueOnShutdown() throws InterruptedException {
+        // Hold the flusher inside its first batch so the rest of the messages wait in the queue
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            if (first.getAndSet(false)) {
+                writing.countDown();
+                release.await();
+            }
+            return invocation.callRealMethod();
+        }).when(jdbcTemplate).batchUpdate(eq(MessageWriteBehindQueue.INSERT_SQL), anyList(), anyInt(), any());
+        queue = start(1, 10);
+        queue.enqueue(message("m0"));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i < 5; i++) {
+            queue.enqueue(message("m" + i));
+        }
+
+        Thread stopper = new Thread(queue::stop);
+        stopper.start();
+        // Let the flusher go only once it has been told to stop, so m1 to m4 are left for the drain
+        while (queue.isRunning()) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+        stopper.join(10_000);
+
+        assertThat(queue.isRunning()).isFalse();
+        assertThat(stored()).containsExactly("m0", "m1", "m2", "m3", "m4");
+    }
+
+    @Test
+    void refusesAMessageItCannotQueueOrWrite() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return invocation.callRealMethod();
+        }).when(jdbcTemplate).batchUpdate(eq(MessageWriteBehindQueue.INSERT_SQL), anyList(), anyInt(), any());
+        doThrow(new QueryTimeoutException("busy")).when(jdbcTemplate)
+                .update(eq(MessageWriteBehindQueue.INSERT_SQL), any(PreparedStatementSetter.class));
+        queue = start(1, 1);
+        ReflectionTestUtils.setField(queue, "offerTimeoutMs", 1L);
+        try {
+            // One message with the flusher, then the single queue slot is taken
+            queue.enqueue(message("m0"));
+            Thread.sleep(100);
+            queue.enqueue(message("m1"));
+
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> queue.enqueue(message("m2"))).isInstanceOf(DataAccessException.class);
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+            assertThat(queue.findUnwrittenAfter("public", new MessageCursor(LocalDateTime.MIN, 0), 10))
+                    .extracting(ChatMessageView::getContent).containsExactly("m0", "m1");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private MessageWriteBehindQueue start(int batchSize, int queueCapacity) {
+        MessageIdAllocator idAllocator = mock(MessageIdAllocator.class);
+        when(idAllocator.nextId()).thenAnswer(invocation -> ids.incrementAndGet());
+        MessageWriteBehindQueue started = new MessageWriteBehindQueue(mock(ChatMessageRepository.class), jdbcTemplate,
+                idAllocator, meterRegistry);
+        ReflectionTestUtils.setField(started, "enabled", true);
+        ReflectionTestUtils.setField(started, "batchSize", batchSize);
+        // Long enough for each test's messages to fill a batch, short enough for stop() not to wait on the poll
+        ReflectionTestUtils.setField(started, "flushIntervalMs", 500L);
+        ReflectionTestUtils.setField(started, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(started, "offerTimeoutMs", 5_000L);
+        ReflectionTestUtils.setField(started, "flushOnShutdown", true);
+        ReflectionTestUtils.setField(started, "retryAttempts", 2);
+        ReflectionTestUtils.setField(started, "retryBackoffMs", 1L);
+        started.start();
+        return started;
+    }
+
+    private void awaitStored(int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stored().size() < count && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void awaitFlushed() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!queue.findUnwrittenAfter("public", new MessageCursor(LocalDateTime.MIN, 0), 10).isEmpty()
+                && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private List<String> stored() {
+        return jdbcTemplate.queryForList("SELECT content FROM messages ORDER BY id", String.class);
+    }
+
+    private static ChatMessage message(String content) {
+        ChatMessage message = new ChatMessage();
+        message.setRoom("public");
+        message.setSender("alice");
+        message.setContent(content);
+        message.setType(MessageType.CHAT);
+        return message;
+    }
+}
@@ -0,0 +1,108 @@
+package com.lmg.backend.chat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RecentMessageCacheTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    private RecentMessageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        MessageStore messageStore = mock(MessageStore.class);
+        when(messageStore.findLatest(any(), anyInt())).thenReturn(List.of());
+        cache = new RecentMessageCache(messageStore, 4, 2);
+        cache.warmUp();
+    }
+
+    @Test
+    void servesLatestPageWhileNothingWasEvicted() {
+        cache.add(message(1));
+        cache.add(message(2));
+
+        List<ChatMessageView> page = cache.findBefore(ChatRooms.PUBLIC, null, 10);
+
+        assertThat(page).extracting(ChatMessageView::getId).containsExactly(2L, 1L);
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void missesOnceCursorReachesPastEvictedMessages() {
+        for (long id = 1; id <= 6; id++) {
+            cache.add(message(id));
+        }
+
+        assertThat(cache.getSize()).isEqualTo(4);
+        assertThat(cache.findBefore(ChatRooms.PUBLIC, null, 3)).extracting(ChatMessageView::getId).containsExactly(6L, 5L, 4L);
+        assertThat(cache.findBefore(ChatRooms.PUBLIC, cursor(4), 3)).isNull();
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void catchUpIsServedOnlyFromInsideTheBuffer() {
+        for (long id = 1; id <= 6; id++) {
+            cache.add(message(id));
+        }
+
+        assertThat(cache.findAfter(ChatRooms.PUBLIC, cursor(4), 10)).extracting(ChatMessageView::getId).containsExactly(5L, 6L);
+        assertThat(cache.findAfter(ChatRooms.PUBLIC, cursor(1), 10)).isNull();
+    }
+
+    @Test
+    void tracksApproximateMemoryOfLiveEntriesOnly() {
+        cache.add(message(1));
+        long oneEntry = cache.getApproximateBytes();
+        for (long id = 2; id <= 8; id++) {
+            cache.add(message(id));
+        }
+
+        assertThat(cache.getApproximateBytes()).isEqualTo(4 * oneEntry);
+    }
+
+    @Test
+    void keepsRoomsApartAndTreatsNewRoomsAsPossiblyIncomplete() {
+        cache.add(message(1));
+        cache.add(message(2, "team"));
+
+        assertThat(cache.findBefore(ChatRooms.PUBLIC, null, 10)).extracting(ChatMessageView::getId).containsExactly(1L);
+        // The database may hold older "team" messages from before this buffer existed
+        assertThat(cache.findBefore("team", null, 10)).isNull();
+        assertThat(cache.findBefore("team", null, 1)).extracting(ChatMessageView::getId).containsExactly(2L);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedRoomAtTheRoomLimit() throws Exception {
+        cache.add(message(1, "team"));
+        Thread.sleep(1);
+        // Public is never evicted, even though it was used longer ago than "team"
+        cache.add(message(2, "dm:alice:bob"));
+
+        assertThat(cache.getRoomCount()).isEqualTo(2);
+        assertThat(cache.findBefore("team", null, 1)).isNull();
+        assertThat(cache.findBefore("dm:alice:bob", null, 1)).extracting(ChatMessageView::getId).containsExactly(2L);
+        assertThat(cache.findBefore(ChatRooms.PUBLIC, null, 1)).isEmpty();
+    }
+
+    private static ChatMessageView message(long id) {
+        return message(id, ChatRooms.PUBLIC);
+    }
+
+    private static ChatMessageView message(long id, String room) {
+        return new ChatMessageView(id, room, "alice", "hello", MessageType.CHAT, START.plusSeconds(id));
+    }
+
+    private static MessageCursor cursor(long id) {
+        return new MessageCursor(START.plusSeconds(id), id);
+    }
+}
@@ -0,0 +1,114 @@
+package com.lmg.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lmg.backend.chat.ChatBroadcaster;
+import com.lmg.backend.chat.ChatMessageBinaryCodec;
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.MessageType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class BinaryPayloadInterceptorTests {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final BinaryPayloadInterceptor interceptor = new BinaryPayloadInterceptor(objectMapper);
+
+    private final ChatMessageView view = new ChatMessageView(7L, "public", "alice", "hi", MessageType.CHAT,
+            LocalDateTime.of(2025, 1, 1, 12, 0, 0, 123_000_000));
+
+    @Test
+    void usesTheBinaryFormCarriedByTheBroadcast() {
+        connect("s1");
+        Message<byte[]> sent = broadcast("simple");
+
+        Message<?> delivered = interceptor.preSend(deliver("s1", sent, true), channel);
+
+        assertThat(delivered.getPayload()).isEqualTo(ChatMessageBinaryCodec.encode(view));
+        assertThat(SimpMessageHeaderAccessor.wrap(delivered).getContentType()).isEqualTo(ChatMessageBinaryCodec.MIME_TYPE);
+    }
+
+    @Test
+    void rebuildsTheBinaryFormOfARelayedBroadcast() {
+        connect("s1");
+        // The external broker keeps STOMP headers only, the LazyEncoding header is lost on the way
+        Message<byte[]> sent = broadcast("relay");
+
+        Message<?> delivered = interceptor.preSend(deliver("s1", sent, false), channel);
+
+        assertThat(delivered.getPayload()).isEqualTo(ChatMessageBinaryCodec.encode(view));
+        assertThat(SimpMessageHeaderAccessor.wrap(delivered).getContentType()).isEqualTo(ChatMessageBinaryCodec.MIME_TYPE);
+    }
+
+    @Test
+    void leavesUnmarkedJsonAlone() {
+        connect("s1");
+        Message<byte[]> sent = broadcast("simple");
+
+        // Without the relay marker a JSON body could be anything, so it is passed through
+        Message<byte[]> relayed = deliver("s1", sent, false);
+        assertThat(interceptor.preSend(relayed, channel)).isSameAs(relayed);
+    }
+
+    @Test
+    void leavesOtherSessionsOnJson() {
+        Message<byte[]> relayed = deliver("s2", broadcast("relay"), false);
+
+        assertThat(interceptor.preSend(relayed, channel)).isSameAs(relayed);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Message<byte[]> broadcast(String brokerMode) {
+        SimpMessageSendingOperations template = mock(SimpMessageSendingOperations.class);
+        new ChatBroadcaster(template, objectMapper, new SimpleMeterRegistry(), brokerMode).broadcast(view);
+        ArgumentCaptor<Message<?>> captor = ArgumentCaptor.forClass(Message.class);
+        verify(template).send(anyString(), captor.capture());
+        return (Message<byte[]>) captor.getValue();
+    }
+
+    /** The MESSAGE frame a session gets for a broadcast, with or without the in-process headers */
+    private static Message<byte[]> deliver(String sessionId, Message<byte[]> sent, boolean keepMessageHeaders) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        SimpMessageHeaderAccessor original = SimpMessageHeaderAccessor.wrap(sent);
+        if (keepMessageHeaders) {
+            accessor.copyHeaders(sent.getHeaders());
+        } else {
+            original.toNativeHeaderMap().forEach((name, values) -> accessor.setNativeHeader(name, values.get(0)));
+            accessor.setContentType(original.getContentType());
+        }
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/topic/public");
+        return MessageBuilder.createMessage(sent.getPayload(), accessor.getMessageHeaders());
+    }
+
+    private void connect(String sessionId) {
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setNativeHeader(BinaryPayloadInterceptor.PAYLOAD_FORMAT_HEADER, BinaryPayloadInterceptor.BINARY_FORMAT);
+        connect.setSessionId(sessionId);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(BinaryPayloadInterceptor.RAW_WEBSOCKET_ATTRIBUTE, true);
+        connect.setSessionAttributes(attributes);
+        interceptor.handleSessionConnect(new SessionConnectEvent(this, MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders())));
+    }
+}
@@ -0,0 +1,74 @@
+package com.lmg.backend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JwtAuthenticatorTests {
+
+    private static final AuthenticatedUser ALICE = new AuthenticatedUser(7L, "alice@example.com", "alice", List.of("USER", "ADMIN"));
+
+    private final JwtService jwtService = new JwtService();
+    private final UserLookupCache userLookupCache = mock(UserLookupCache.class);
+    private final JwtAuthenticator authenticator = new JwtAuthenticator(jwtService, userLookupCache);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwtService, "secretKey", "bXlTZWNyZXRLZXlGb3JKV1RUb2tlbkdlbmVyYXRpb25UZXN0czEyMzQ1Njc4OTA=");
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(jwtService, "claimsCacheMaxSize", 100);
+        ReflectionTestUtils.setField(jwtService, "meterRegistry", new SimpleMeterRegistry());
+        jwtService.init();
+        ReflectionTestUtils.setField(authenticator, "stateless", true);
+    }
+
+    @Test
+    void buildsThePrincipalFromTheClaimsAlone() {
+        UsernamePasswordAuthenticationToken authentication = authenticator.authenticateHeader("Bearer " + jwtService.generateToken(ALICE));
+
+        AuthenticatedUser user = (AuthenticatedUser) authentication.getPrincipal();
+        assertThat(user.getId()).isEqualTo(7L);
+        assertThat(user.getUsername()).isEqualTo("alice");
+        assertThat(user.getRoles()).containsExactly("USER", "ADMIN");
+        verify(userLookupCache, never()).findByEmail(anyString());
+    }
+
+    @Test
+    void looksUpTheUserForTokensWithoutUserClaims() {
+        when(userLookupCache.findByEmail("alice@example.com")).thenReturn(ALICE);
+
+        UsernamePasswordAuthenticationToken authentication = authenticator.authenticate(jwtService.generateToken("alice@example.com"));
+
+        assertThat(authentication.getPrincipal()).isSameAs(ALICE);
+    }
+
+    @Test
+    void looksUpEveryUserWhenNotStateless() {
+        ReflectionTestUtils.setField(authenticator, "stateless", false);
+        String token = jwtService.generateToken(ALICE);
+
+        // A user deleted after the token was issued is no longer let in
+        assertThat(authenticator.authenticate(token)).isNull();
+        verify(userLookupCache).findByEmail("alice@example.com");
+    }
+
+    @Test
+    void rejectsMissingAndTamperedTokens() {
+        String token = jwtService.generateToken(ALICE);
+
+        assertThat(authenticator.authenticateHeader(null)).isNull();
+        assertThat(authenticator.authenticateHeader("Basic " + token)).isNull();
+        assertThat(authenticator.authenticate(token.substring(0, token.length() - 2) + "xx")).isNull();
+    }
+}
@@ -0,0 +1,72 @@
+package com.lmg.backend.config;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtServiceTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JwtService jwtService = new JwtService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwtService, "secretKey", "bXlTZWNyZXRLZXlGb3JKV1RUb2tlbkdlbmVyYXRpb25UZXN0czEyMzQ1Njc4OTA=");
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(jwtService, "claimsCacheMaxSize", 10);
+        ReflectionTestUtils.setField(jwtService, "meterRegistry", meterRegistry);
+        jwtService.init();
+    }
+
+    @Test
+    void rejectsACachedTokenOnceItExpires() throws InterruptedException {
+        // Expiry has second precision, so this token expires within the next second
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 1_000L);
+        String token = jwtService.generateToken("alice@example.com");
+        jwtService.parseToken(token);
+        jwtService.parseToken(token);
+        assertThat(cacheHits()).isEqualTo(1);
+
+        Thread.sleep(1_100);
+
+        assertThatThrownBy(() -> jwtService.parseToken(token)).isInstanceOf(ExpiredJwtException.class);
+        assertThat(cacheHits()).isEqualTo(1);
+    }
+
+    @Test
+    void staysBoundedAndEvictsTheTokensClosestToExpiring() {
+        String longLived = jwtService.generateToken("long@example.com");
+        jwtService.parseToken(longLived);
+        List<String> shortLived = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // A second apart, so every token expires at a different time
+            ReflectionTestUtils.setField(jwtService, "jwtExpiration", 60_000L + i * 1_000L);
+            String token = jwtService.generateToken("user" + i + "@example.com");
+            shortLived.add(token);
+            jwtService.parseToken(token);
+            assertThat(cacheSize()).isLessThanOrEqualTo(10);
+        }
+
+        jwtService.parseToken(longLived);
+        jwtService.parseToken(shortLived.get(shortLived.size() - 1));
+        assertThat(cacheHits()).isEqualTo(2);
+        jwtService.parseToken(shortLived.get(0));
+        assertThat(cacheHits()).isEqualTo(2);
+    }
+
+    private double cacheHits() {
+        return meterRegistry.counter("auth.jwt.cache.hits").count();
+    }
+
+    private double cacheSize() {
+        return meterRegistry.get("auth.jwt.cache.size").gauge().value();
+    }
+}
@@ -0,0 +1,72 @@
+package com.lmg.backend.config;
+
+import com.lmg.backend.config.LoginRateLimiter.TokenBucket;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoginRateLimiterTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void bucketRunsDryAndRefillsOverTime() {
+        // Three tokens, one more every second
+        TokenBucket bucket = new TokenBucket(3, 60, 0);
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(0)).isZero();
+        }
+        assertThat(bucket.tryAcquire(0)).isEqualTo(SECOND);
+        assertThat(bucket.tryAcquire(SECOND / 2)).isEqualTo(SECOND / 2);
+
+        assertThat(bucket.tryAcquire(SECOND)).isZero();
+        assertThat(bucket.tryAcquire(SECOND)).isPositive();
+    }
+
+    @Test
+    void bucketNeverHoldsMoreThanItsCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 60, 0);
+        bucket.tryAcquire(0);
+
+        long later = TimeUnit.MINUTES.toNanos(10);
+        assertThat(bucket.isFull(later)).isTrue();
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(later)).isZero();
+        }
+        assertThat(bucket.tryAcquire(later)).isPositive();
+    }
+
+    @Test
+    void limitsEachAccountAcrossClients() {
+        LoginRateLimiter limiter = limiter(100, 2);
+
+        assertThat(limiter.tryAcquire("10.0.0.1", "alice@example.com")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.2", "Alice@Example.com")).isZero();
+        // Seconds until the next token, one refill per 30 seconds
+        assertThat(limiter.tryAcquire("10.0.0.3", "alice@example.com")).isBetween(29L, 30L);
+        assertThat(limiter.tryAcquire("10.0.0.3", "bob@example.com")).isZero();
+    }
+
+    @Test
+    void limitsEachClientAcrossAccounts() {
+        LoginRateLimiter limiter = limiter(2, 100);
+
+        assertThat(limiter.tryAcquire("10.0.0.1", "a@example.com")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1", null)).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1", "b@example.com")).isPositive();
+        assertThat(limiter.tryAcquire("10.0.0.2", "b@example.com")).isZero();
+    }
+
+    private static LoginRateLimiter limiter(int ipCapacity, int accountCapacity) {
+        LoginRateLimiter limiter = new LoginRateLimiter();
+        ReflectionTestUtils.setField(limiter, "ipCapacity", ipCapacity);
+        ReflectionTestUtils.setField(limiter, "ipRefillPerMinute", 2);
+        ReflectionTestUtils.setField(limiter, "accountCapacity", accountCapacity);
+        ReflectionTestUtils.setField(limiter, "accountRefillPerMinute", 2);
+        ReflectionTestUtils.setField(limiter, "maxKeys", 1000);
+        return limiter;
+    }
+}
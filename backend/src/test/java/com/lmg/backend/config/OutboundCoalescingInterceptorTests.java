@@ -0,0 +1,133 @@
+package com.lmg.backend.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutboundCoalescingInterceptorTests {
+
+    private final BlockingQueue<Message<?>> sent = new LinkedBlockingQueue<>();
+    private final MessageChannel channel = (message, timeout) -> sent.add(message);
+
+    private final OutboundCoalescingInterceptor interceptor = new OutboundCoalescingInterceptor(true, 20, 3);
+
+    @AfterEach
+    void tearDown() {
+        interceptor.shutdown();
+    }
+
+    @Test
+    void passesMessagesThroughForSessionsThatDidNotOptIn() {
+        connect("s1", false);
+        Message<?> message = message("s1", "{\"id\":1}");
+
+        assertThat(interceptor.preSend(message, channel)).isSameAs(message);
+    }
+
+    @Test
+    void batchesUntilTheWindowRunsOut() throws Exception {
+        connect("s1", true);
+
+        assertThat(interceptor.preSend(message("s1", "{\"id\":1}"), channel)).isNull();
+        assertThat(interceptor.preSend(message("s1", "{\"id\":2}"), channel)).isNull();
+
+        Message<?> batch = sent.poll(2, TimeUnit.SECONDS);
+        assertThat(batch).isNotNull();
+        assertThat(new String((byte[]) batch.getPayload(), StandardCharsets.UTF_8)).isEqualTo("[{\"id\":1},{\"id\":2}]");
+        assertThat(SimpMessageHeaderAccessor.getSubscriptionId(batch.getHeaders())).isEqualTo("sub-0");
+        // The combined frame itself goes straight through
+        assertThat(interceptor.preSend(batch, channel)).isSameAs(batch);
+    }
+
+    @Test
+    void sendsRightAwayWhenTheBatchIsFull() {
+        connect("s1", true);
+        for (int id = 1; id <= 3; id++) {
+            interceptor.preSend(message("s1", "{\"id\":" + id + "}"), channel);
+        }
+
+        Message<?> batch = sent.poll();
+        assertThat(batch).isNotNull();
+        assertThat(SimpMessageHeaderAccessor.wrap(batch).getFirstNativeHeader(OutboundCoalescingInterceptor.BATCH_SIZE_HEADER))
+                .isEqualTo("3");
+    }
+
+    @Test
+    void dropsPendingMessagesOnDisconnect() throws Exception {
+        connect("s1", true);
+        interceptor.preSend(message("s1", "{\"id\":1}"), channel);
+
+        interceptor.handleSessionDisconnect(new SessionDisconnectEvent(this,
+                MessageBuilder.createMessage(new byte[0], new MessageHeaders(null)), "s1", CloseStatus.NORMAL));
+
+        assertThat(interceptor.getSessionCount()).isZero();
+        // The scheduled flush finds nothing to send
+        assertThat(sent.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void sendsBatchesOfASubscriptionInOrder() throws Exception {
+        OutboundCoalescingInterceptor slowWindow = new OutboundCoalescingInterceptor(true, 1, 3);
+        try {
+            StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+            connect.setNativeHeader(OutboundCoalescingInterceptor.COALESCE_HEADER, "true");
+            connect.setSessionId("s1");
+            slowWindow.handleSessionConnect(new SessionConnectEvent(this, MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders())));
+            for (int id = 1; id <= 300; id++) {
+                slowWindow.preSend(message("s1", "{\"id\":" + id + "}"), channel);
+            }
+
+            // Every id arrives exactly once, in the order it was sent, across full and timed-out batches
+            StringBuilder ids = new StringBuilder();
+            int received = 0;
+            while (received < 300) {
+                Message<?> batch = sent.poll(2, TimeUnit.SECONDS);
+                assertThat(batch).isNotNull();
+                String body = new String((byte[]) batch.getPayload(), StandardCharsets.UTF_8);
+                received += body.split(",").length;
+                ids.append(body);
+            }
+            StringBuilder expected = new StringBuilder();
+            for (int id = 1; id <= 300; id++) {
+                expected.append("{\"id\":").append(id).append('}');
+            }
+            assertThat(ids.toString().replace("[", "").replace("]", "").replace("},{", "}{")).isEqualTo(expected.toString());
+        } finally {
+            slowWindow.shutdown();
+        }
+    }
+
+    private void connect(String sessionId, boolean coalesce) {
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        if (coalesce) {
+            connect.setNativeHeader(OutboundCoalescingInterceptor.COALESCE_HEADER, "true");
+        }
+        connect.setSessionId(sessionId);
+        interceptor.handleSessionConnect(new SessionConnectEvent(this, MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders())));
+    }
+
+    private static Message<byte[]> message(String sessionId, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/topic/public");
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,53 @@
+package com.lmg.backend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PasswordHashingServiceTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+    // One hashing thread and one queue slot
+    private final PasswordHashingService hashingService = new PasswordHashingService(passwordEncoder, meterRegistry, 1, 1, 1);
+
+    @AfterEach
+    void tearDown() {
+        hashingService.shutdown();
+    }
+
+    @Test
+    void rejectsRightAwayOnceTheQueueIsFull() throws Exception {
+        CountDownLatch hashing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(passwordEncoder.encode(anyString())).thenAnswer(invocation -> {
+            hashing.countDown();
+            release.await();
+            return "hash of " + invocation.getArgument(0);
+        });
+
+        CompletableFuture<String> running = hashingService.encode("first");
+        assertThat(hashing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = hashingService.encode("second");
+
+        assertThatThrownBy(() -> hashingService.encode("third")).isInstanceOf(RejectedExecutionException.class);
+        assertThat(meterRegistry.counter("auth.password.hash.rejected").count()).isEqualTo(1);
+        assertThat(hashingService.getQueueSize()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("hash of first");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("hash of second");
+    }
+}
@@ -0,0 +1,140 @@
+package com.lmg.backend.config;
+
+import com.lmg.backend.config.SlowConsumerInterceptor.Policy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class SlowConsumerInterceptorTests {
+
+    private final List<Message<?>> written = new ArrayList<>();
+    private final MessageHandler handler = written::add;
+    private final MessageChannel channel = (message, timeout) -> true;
+    private final WebSocketSessionRegistry sessionRegistry = mock(WebSocketSessionRegistry.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SlowConsumerInterceptor interceptor;
+    private Message<?> inFlight;
+
+    @Test
+    void holdsFramesBehindTheOneInFlightAndReleasesThemInOrder() {
+        interceptor = create(Policy.RESYNC, 10, 10_000);
+        connect("s1");
+
+        assertThat(interceptor.preSend(message("s1", 1), channel)).isNull();
+        assertThat(interceptor.preSend(message("s1", 2), channel)).isNull();
+        assertThat(interceptor.getQueuedFrames()).isEqualTo(2);
+
+        interceptor.afterMessageHandled(inFlight, channel, handler, null);
+
+        assertThat(payloads()).containsExactly("{\"id\":1}", "{\"id\":2}");
+        assertThat(interceptor.getQueuedFrames()).isZero();
+        // Idle again, so the next frame goes straight through
+        Message<?> next = message("s1", 3);
+        assertThat(interceptor.preSend(next, channel)).isSameAs(next);
+    }
+
+    @Test
+    void dropsTheOldestMessageOnOverflow() {
+        interceptor = create(Policy.DROP_OLDEST, 2, 10_000);
+        connect("s1");
+        for (int id = 1; id <= 4; id++) {
+            interceptor.preSend(message("s1", id), channel);
+        }
+
+        assertThat(interceptor.getThrottledSessionCount()).isEqualTo(1);
+        interceptor.afterMessageHandled(inFlight, channel, handler, null);
+
+        assertThat(payloads()).containsExactly("{\"id\":3}", "{\"id\":4}");
+        assertThat(meterRegistry.counter("chat.ws.outbound.dropped", "policy", "drop-oldest").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("chat.ws.slow-consumers", "action", "drop-oldest").count()).isEqualTo(1);
+        assertThat(interceptor.getThrottledSessionCount()).isZero();
+    }
+
+    @Test
+    void collapsesQueuedMessagesIntoOneResyncMarker() {
+        interceptor = create(Policy.RESYNC, 2, 10_000);
+        connect("s1");
+        for (int id = 1; id <= 4; id++) {
+            interceptor.preSend(message("s1", id), channel);
+        }
+
+        interceptor.afterMessageHandled(inFlight, channel, handler, null);
+
+        // The third frame overflowed the queue into a marker, the fourth queued behind it
+        assertThat(payloads()).containsExactly("{\"resync\":true}", "{\"id\":4}");
+        assertThat(SimpMessageHeaderAccessor.getFirstNativeHeader(SlowConsumerInterceptor.RESYNC_HEADER,
+                written.get(0).getHeaders())).isEqualTo("true");
+        assertThat(SimpMessageHeaderAccessor.getSubscriptionId(written.get(0).getHeaders())).isEqualTo("sub-0");
+    }
+
+    @Test
+    void closesTheSessionWhenPolicyIsDisconnect() {
+        interceptor = create(Policy.DISCONNECT, 2, 10_000);
+        connect("s1");
+        interceptor.preSend(message("s1", 1), channel);
+        interceptor.preSend(message("s1", 2), channel);
+        verify(sessionRegistry, never()).close("s1", CloseStatus.SESSION_NOT_RELIABLE);
+
+        interceptor.preSend(message("s1", 3), channel);
+
+        verify(sessionRegistry).close("s1", CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(interceptor.getQueuedFrames()).isZero();
+    }
+
+    @Test
+    void closesAStalledSessionWhateverThePolicy() {
+        interceptor = create(Policy.DROP_OLDEST, 100, 0);
+        connect("s1");
+
+        interceptor.preSend(message("s1", 1), channel);
+
+        verify(sessionRegistry).close("s1", CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(meterRegistry.counter("chat.ws.slow-consumers", "action", "stalled").count()).isEqualTo(1);
+    }
+
+    private SlowConsumerInterceptor create(Policy policy, int maxQueuedFrames, long stallTimeoutMs) {
+        return new SlowConsumerInterceptor(sessionRegistry, meterRegistry, policy, maxQueuedFrames, stallTimeoutMs);
+    }
+
+    private void connect(String sessionId) {
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionId(sessionId);
+        interceptor.handleSessionConnect(new SessionConnectEvent(this, MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders())));
+        // What a broker relay sends back: a STOMP CONNECTED frame rather than a CONNECT_ACK
+        StompHeaderAccessor connected = StompHeaderAccessor.create(StompCommand.CONNECTED);
+        connected.setSessionId(sessionId);
+        inFlight = MessageBuilder.createMessage(new byte[0], connected.getMessageHeaders());
+        assertThat(interceptor.preSend(inFlight, channel)).isSameAs(inFlight);
+    }
+
+    private List<String> payloads() {
+        return written.stream().map(message -> new String((byte[]) message.getPayload(), StandardCharsets.UTF_8)).toList();
+    }
+
+    private static Message<byte[]> message(String sessionId, int id) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/topic/public");
+        return MessageBuilder.createMessage(("{\"id\":" + id + "}").getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,64 @@
+package com.lmg.backend.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StompAuthChannelInterceptorTests {
+
+    private final JwtAuthenticator jwtAuthenticator = mock(JwtAuthenticator.class);
+    private final StompAuthChannelInterceptor interceptor = new StompAuthChannelInterceptor(jwtAuthenticator);
+    private final MessageChannel channel = (message, timeout) -> true;
+
+    @Test
+    void refusesAConnectWithoutCredentialsWhenAuthIsRequired() {
+        ReflectionTestUtils.setField(interceptor, "requireAuth", true);
+
+        assertThatThrownBy(() -> interceptor.preSend(connect(null), channel)).isInstanceOf(BadCredentialsException.class);
+        assertThatThrownBy(() -> interceptor.preSend(connect("Bearer forged"), channel)).isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void letsAnAnonymousConnectThroughWhenAuthIsOptional() {
+        ReflectionTestUtils.setField(interceptor, "requireAuth", false);
+
+        Message<byte[]> connect = connect(null);
+        assertThat(interceptor.preSend(connect, channel)).isSameAs(connect);
+        assertThat(StompHeaderAccessor.wrap(connect).getUser()).isNull();
+    }
+
+    @Test
+    void attachesThePrincipalOfAValidToken() {
+        ReflectionTestUtils.setField(interceptor, "requireAuth", true);
+        AuthenticatedUser alice = new AuthenticatedUser(1L, "alice@example.com", "alice", AuthenticatedUser.DEFAULT_ROLES);
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(alice, null, List.of());
+        when(jwtAuthenticator.authenticateHeader("Bearer valid")).thenReturn(authentication);
+
+        Message<byte[]> connect = connect("Bearer valid");
+        interceptor.preSend(connect, channel);
+
+        assertThat(StompHeaderAccessor.wrap(connect).getUser()).isSameAs(authentication);
+    }
+
+    private static Message<byte[]> connect(String authorization) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        if (authorization != null) {
+            accessor.addNativeHeader("Authorization", authorization);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,43 @@
+package com.lmg.backend.config;
+
+import com.lmg.backend.user.User;
+import com.lmg.backend.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:user-lookup-cache-tests")
+class UserLookupCacheTests {
+
+    @Autowired
+    private UserLookupCache userLookupCache;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void dropsAUserWhenItsRowChanges() {
+        User user = userRepository.saveAndFlush(User.builder()
+                .username("before").email("renamed@example.com").password("x".repeat(60)).build());
+        assertThat(userLookupCache.findByEmail("renamed@example.com").getUsername()).isEqualTo("before");
+
+        user.setUsername("after");
+        userRepository.saveAndFlush(user);
+
+        assertThat(userLookupCache.findByEmail("renamed@example.com").getUsername()).isEqualTo("after");
+    }
+
+    @Test
+    void dropsAUserWhenItsRowIsDeleted() {
+        User user = userRepository.saveAndFlush(User.builder()
+                .username("leaving").email("leaving@example.com").password("x".repeat(60)).build());
+        assertThat(userLookupCache.findByEmail("leaving@example.com")).isNotNull();
+
+        userRepository.delete(user);
+        userRepository.flush();
+
+        assertThat(userLookupCache.findByEmail("leaving@example.com")).isNull();
+    }
+}
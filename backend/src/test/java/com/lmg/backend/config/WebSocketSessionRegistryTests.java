@@ -0,0 +1,62 @@
+package com.lmg.backend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebSocketSessionRegistryTests {
+
+    private static final long TIMEOUT_MS = 1000;
+
+    private final WebSocketSessionRegistry registry = new WebSocketSessionRegistry(new SimpleMeterRegistry(), TIMEOUT_MS);
+    private final WebSocketHandler handler = registry.decorate(mock(WebSocketHandler.class));
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void reapsOnlySessionsThatWentSilent() throws Exception {
+        WebSocketSession quiet = session("quiet");
+        WebSocketSession chatty = session("chatty");
+        handler.afterConnectionEstablished(quiet);
+        handler.afterConnectionEstablished(chatty);
+
+        long later = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS / 2);
+        Thread.sleep(5);
+        handler.handleMessage(chatty, new TextMessage("\n"));
+
+        assertThat(registry.reapIdle(later + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS / 2) + 1)).isEqualTo(1);
+        verify(quiet).close(WebSocketSessionRegistry.IDLE);
+        verify(chatty, never()).close(WebSocketSessionRegistry.IDLE);
+    }
+
+    @Test
+    void forgetsClosedSessions() throws Exception {
+        WebSocketSession session = session("s1");
+        handler.afterConnectionEstablished(session);
+        handler.afterConnectionClosed(session, WebSocketSessionRegistry.IDLE);
+
+        assertThat(registry.getSessionCount()).isZero();
+        assertThat(registry.close("s1", WebSocketSessionRegistry.IDLE)).isFalse();
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
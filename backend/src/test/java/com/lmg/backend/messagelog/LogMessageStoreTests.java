@@ -0,0 +1,178 @@
+package com.lmg.backend.messagelog;
+
+import com.lmg.backend.chat.ChatMessage;
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.MessageCursor;
+import com.lmg.backend.chat.MessageType;
+import com.lmg.backend.messagelog.LogMessageStore.FsyncPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogMessageStoreTests {
+
+    @TempDir
+    Path directory;
+
+    private LogMessageStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void pagesThroughOneRoomAcrossSegments() throws IOException {
+        store = open(0);
+        for (int i = 0; i < 100; i++) {
+            store.append(message(i % 2 == 0 ? "public" : "team", "m" + i));
+        }
+        assertThat(store.getSegmentCount()).isGreaterThan(1);
+
+        List<ChatMessageView> latest = store.findLatest("public", 10);
+        assertThat(latest).extracting(ChatMessageView::getContent).startsWith("m98", "m96").hasSize(10);
+
+        // Walk back through the whole room and then forward again from its first message
+        List<ChatMessageView> all = new ArrayList<>(latest);
+        List<ChatMessageView> page = latest;
+        while (!page.isEmpty()) {
+            page = store.findBefore("public", MessageCursor.of(all.get(all.size() - 1)), 7);
+            all.addAll(page);
+        }
+        assertThat(all).hasSize(50).extracting(ChatMessageView::getRoom).containsOnly("public");
+        assertThat(all).extracting(ChatMessageView::getId).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+
+        List<ChatMessageView> forward = store.findAfter("public", MessageCursor.of(all.get(all.size() - 1)), 3);
+        assertThat(forward).extracting(ChatMessageView::getContent).containsExactly("m2", "m4", "m6");
+
+        // A full scan crosses rooms and segments in ID order
+        assertThat(store.scan(45, 1000)).extracting(ChatMessageView::getId).hasSize(55).startsWith(46L, 47L).endsWith(100L);
+        assertThat(store.idBeforeLatest(55)).isEqualTo(45);
+        assertThat(store.idBeforeLatest(1000)).isZero();
+    }
+
+    @Test
+    void reopensAndDropsATornLastRecord() throws IOException {
+        store = open(0);
+        for (int i = 0; i < 10; i++) {
+            store.append(message("public", "m" + i));
+        }
+        store.close();
+        corruptLastWrittenByte();
+
+        store = open(0);
+        assertThat(store.findLatest("public", 20)).extracting(ChatMessageView::getContent)
+                .containsExactly("m8", "m7", "m6", "m5", "m4", "m3", "m2", "m1", "m0");
+        // The torn record was never durable, so its ID is handed out again
+        assertThat(store.append(message("public", "again")).getId()).isEqualTo(10L);
+        assertThat(store.findLatest("public", 1)).extracting(ChatMessageView::getContent).containsExactly("again");
+    }
+
+    @Test
+    void retentionDeletesClosedSegmentsOnly() throws IOException {
+        store = open(0);
+        for (int i = 0; i < 60; i++) {
+            store.append(message("public", "m" + i));
+        }
+        int segments = store.getSegmentCount();
+        assertThat(segments).isGreaterThan(2);
+
+        assertThat(store.enforceRetention(nowMicros())).isZero();
+        assertThat(store.enforceRetention(nowMicros() + TimeUnit.HOURS.toMicros(2)))
+                .isEqualTo(segments - 1);
+        assertThat(store.getSegmentCount()).isEqualTo(1);
+        assertThat(store.findLatest("public", 1)).extracting(ChatMessageView::getContent).containsExactly("m59");
+    }
+
+    @Test
+    void keepsAtMostMaxSegments() throws IOException {
+        store = open(2);
+        for (int i = 0; i < 60; i++) {
+            store.append(message("public", "m" + i));
+        }
+        assertThat(store.getSegmentCount()).isEqualTo(2);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void rollsAndDeletesSegmentsWhileTheIntervalFsyncRuns() throws IOException {
+        // Forcing every millisecond while each roll deletes the oldest segment: the fsync thread keeps
+        // picking up segments that retention unmaps right after
+        store = open(2, FsyncPolicy.INTERVAL, 1);
+        for (int i = 0; i < 5000; i++) {
+            store.append(message("public", "m" + i));
+        }
+        assertThat(store.getSegmentCount()).isEqualTo(2);
+        assertThat(store.findLatest("public", 1)).extracting(ChatMessageView::getContent).containsExactly("m4999");
+    }
+
+    @Test
+    void forcingADeletedSegmentDoesNothing() throws IOException {
+        LogSegment segment = LogSegment.create(directory, 1, 1024, 4);
+        segment.append(1, 1, "public".hashCode(), new byte[16]);
+        segment.delete();
+
+        segment.force();
+        assertThat(Files.exists(directory.resolve(LogSegment.fileName(1)))).isFalse();
+    }
+
+    private LogMessageStore open(int maxSegments) throws IOException {
+        return open(maxSegments, FsyncPolicy.NEVER, 0);
+    }
+
+    private LogMessageStore open(int maxSegments, FsyncPolicy fsync, long fsyncIntervalMs) throws IOException {
+        // Small segments so a few dozen messages span several files; one hour of retention
+        LogMessageStore opened = new LogMessageStore(directory.toString(), 1024, 4, fsync, fsyncIntervalMs, 1, maxSegments);
+        opened.open();
+        return opened;
+    }
+
+    private void corruptLastWrittenByte() throws IOException {
+        Path last;
+        try (Stream<Path> files = Files.list(directory)) {
+            last = files.sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(last);
+        int end = bytes.length - 1;
+        while (bytes[end] == 0) {
+            end--;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.seek(end);
+            file.write(bytes[end] ^ 0x7F);
+        }
+    }
+
+    private static ChatMessage message(String room, String content) {
+        ChatMessage message = new ChatMessage();
+        message.setRoom(room);
+        message.setSender("alice");
+        message.setContent(content);
+        message.setType(MessageType.CHAT);
+        return message;
+    }
+
+    private static long nowMicros() {
+        // Same convention as the store: sentAt is local wall-clock time read as UTC
+        return ChronoUnit.MICROS.between(Instant.EPOCH, LocalDateTime.now().toInstant(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,123 @@
+package com.lmg.backend.presence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PresenceRegistryTests {
+
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+    // Long debounce so the tests drive flush() themselves
+    private final PresenceRegistry registry = new PresenceRegistry(messagingTemplate, 60_000, "simple", 60_000);
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void countsTabsPerUser() {
+        registry.sessionConnected("s1", "alice");
+        registry.sessionConnected("s2", "alice");
+        registry.sessionDisconnected("s1");
+
+        assertThat(registry.isOnline("alice")).isTrue();
+        registry.sessionDisconnected("s2");
+        assertThat(registry.isOnline("alice")).isFalse();
+    }
+
+    @Test
+    void sendsOneDeltaForABurstOfChanges() {
+        registry.sessionConnected("s1", "alice");
+        registry.sessionConnected("s2", "bob");
+        registry.sessionConnected("s3", "carol");
+        registry.sessionDisconnected("s3");
+        registry.flush();
+
+        PresenceDelta delta = sentDelta();
+        assertThat(delta.version()).isEqualTo(1);
+        assertThat(delta.snapshot()).isFalse();
+        assertThat(delta.online()).containsExactlyInAnyOrder("alice", "bob");
+        assertThat(delta.offline()).isEmpty();
+        assertThat(registry.getRoster()).isEqualTo(new PresenceRoster(delta.node(), 1, List.of("alice", "bob"), 0));
+    }
+
+    @Test
+    void sendsNothingWhenAReconnectCancelsOut() {
+        registry.sessionConnected("s1", "alice");
+        registry.flush();
+        registry.sessionDisconnected("s1");
+        registry.sessionConnected("s2", "alice");
+        registry.flush();
+
+        // Only the first delta went out
+        sentDelta();
+        assertThat(registry.getRoster().version()).isEqualTo(1);
+    }
+
+    @Test
+    void staysQuietWithoutChanges() {
+        registry.flush();
+
+        verify(messagingTemplate, never()).convertAndSend(any(String.class), any(Object.class));
+    }
+
+    @Test
+    void publishesPerNodeTransitionsAndSnapshotsBehindABrokerRelay() {
+        PresenceRegistry first = new PresenceRegistry(messagingTemplate, 60_000, "relay", 60_000);
+        PresenceRegistry second = new PresenceRegistry(messagingTemplate, 60_000, "relay", 60_000);
+        try {
+            // alice has a tab on each node and closes the one on the first
+            first.sessionConnected("s1", "alice");
+            second.sessionConnected("s2", "alice");
+            second.sessionConnected("s3", "bob");
+            first.flush();
+            second.flush();
+            first.sessionDisconnected("s1");
+            first.flush();
+            second.publishSnapshot();
+
+            List<PresenceDelta> deltas = sentDeltas(4);
+            PresenceDelta joinedFirst = deltas.get(0);
+            PresenceDelta joinedSecond = deltas.get(1);
+            assertThat(joinedFirst.node()).isNotEqualTo(joinedSecond.node());
+            assertThat(joinedFirst.version()).isEqualTo(1);
+            assertThat(joinedSecond.version()).isEqualTo(1);
+            assertThat(deltas.get(2)).isEqualTo(new PresenceDelta(joinedFirst.node(), 2, false, List.of(), List.of("alice")));
+            // The second node still lists alice, so a client combining the nodes keeps her online
+            assertThat(deltas.get(3)).isEqualTo(new PresenceDelta(joinedSecond.node(), 1, true, List.of("alice", "bob"), List.of()));
+            assertThat(second.getRoster().snapshotIntervalMs()).isEqualTo(60_000);
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    void sendsNoSnapshotsOnASingleNode() {
+        assertThat(registry.getRoster().snapshotIntervalMs()).isZero();
+    }
+
+    private List<PresenceDelta> sentDeltas(int count) {
+        ArgumentCaptor<PresenceDelta> captor = ArgumentCaptor.forClass(PresenceDelta.class);
+        verify(messagingTemplate, times(count)).convertAndSend(eq(PresenceRegistry.PRESENCE_TOPIC), captor.capture());
+        return captor.getAllValues();
+    }
+
+    private PresenceDelta sentDelta() {
+        ArgumentCaptor<PresenceDelta> captor = ArgumentCaptor.forClass(PresenceDelta.class);
+        verify(messagingTemplate).convertAndSend(eq(PresenceRegistry.PRESENCE_TOPIC), captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,78 @@
+package com.lmg.backend.retention;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.MessageCursor;
+import com.lmg.backend.chat.MessageType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageArchiveTests {
+
+    private static final LocalDateTime DAY_ONE = LocalDateTime.of(2025, 1, 1, 23, 0);
+
+    // Configured like Spring Boot's, which writes dates as ISO strings
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsAcrossDaysAndChunksInBothDirections() throws Exception {
+        MessageArchive archive = open();
+        // Two chunks, the second spilling into the next day
+        archive.append(List.of(message(1, "public", 0), message(2, "dm:alice:bob", 10), message(3, "public", 30)));
+        archive.append(List.of(message(4, "public", 50), message(5, "public", 70), message(6, "public", 90)));
+
+        assertThat(ids(archive.findBefore("public", null, 10))).containsExactly(6L, 5L, 4L, 3L, 1L);
+        assertThat(ids(archive.findBefore("public", cursor(5, 70), 2))).containsExactly(4L, 3L);
+        assertThat(ids(archive.findAfter("public", cursor(3, 30), 10))).containsExactly(4L, 5L, 6L);
+        assertThat(ids(archive.findBefore("dm:alice:bob", null, 10))).containsExactly(2L);
+        assertThat(archive.findBefore("team", null, 10)).isEmpty();
+        assertThat(archive.getFileCount()).isEqualTo(3);
+    }
+
+    @Test
+    void reopensAndSkipsRowsArchivedTwice() throws Exception {
+        MessageArchive archive = open();
+        archive.append(List.of(message(1, "public", 0), message(2, "public", 10)));
+        // The same chunk again, as after a crash before its rows were deleted
+        archive.append(List.of(message(1, "public", 0), message(2, "public", 10)));
+
+        MessageArchive reopened = open();
+
+        List<ChatMessageView> rows = reopened.findAfter("public", cursor(0, -1), 10);
+        assertThat(ids(rows)).containsExactly(1L, 2L);
+        assertThat(rows.get(0).getContent()).isEqualTo("message 1");
+        assertThat(rows.get(0).getSentAt()).isEqualTo(DAY_ONE);
+        assertThat(rows.get(0).getType()).isEqualTo(MessageType.CHAT);
+    }
+
+    private MessageArchive open() throws Exception {
+        MessageArchive archive = new MessageArchive(objectMapper, directory.toString(), 4);
+        archive.open();
+        return archive;
+    }
+
+    private static MessageCursor cursor(long id, long minutes) {
+        return new MessageCursor(DAY_ONE.plusMinutes(minutes), id);
+    }
+
+    private static List<Long> ids(List<ChatMessageView> rows) {
+        return rows.stream().map(ChatMessageView::getId).toList();
+    }
+
+    private static ChatMessageView message(long id, String room, long minutes) {
+        return new ChatMessageView(id, room, "alice", "message " + id, MessageType.CHAT, DAY_ONE.plusMinutes(minutes));
+    }
+}
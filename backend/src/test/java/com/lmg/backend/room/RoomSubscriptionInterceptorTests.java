@@ -0,0 +1,98 @@
+package com.lmg.backend.room;
+
+import com.lmg.backend.config.WebSocketConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoomSubscriptionInterceptorTests {
+
+    private final RoomMembershipService membershipService = mock(RoomMembershipService.class);
+    private final RoomSubscriptionInterceptor interceptor = new RoomSubscriptionInterceptor(membershipService);
+    private final MessageChannel channel = (message, timeout) -> true;
+
+    @Test
+    void allowsTheDestinationsClientsRead() {
+        when(membershipService.isMember("alice", "team")).thenReturn(true);
+
+        for (String destination : new String[]{"/topic/public", "/topic/presence", "/topic/room.team", "/user/queue/messages"}) {
+            Message<byte[]> subscribe = subscribe(destination);
+            assertThat(interceptor.preSend(subscribe, channel)).isSameAs(subscribe);
+        }
+    }
+
+    @Test
+    void refusesRoomsOfOtherUsers() {
+        assertDenied("/topic/room.team");
+    }
+
+    @Test
+    void refusesWildcards() {
+        when(membershipService.isMember("alice", "team")).thenReturn(true);
+
+        assertDenied("/topic/**");
+        assertDenied("/topic/*");
+        assertDenied("/topic/room.*");
+        assertDenied("/topic/room.te?m");
+        assertDenied("/topic/room.{id}");
+        assertDenied("/queue*/**");
+        assertDenied("/topic/#");
+        assertDenied("/topic.*");
+    }
+
+    @Test
+    void refusesEverythingElse() {
+        assertDenied("/queue/messages-user123");
+        assertDenied("/queue/messages");
+        assertDenied("/topic/other");
+        assertDenied("/app/chat.sendMessage");
+        assertDenied(null);
+    }
+
+    @Test
+    void refusesTheUserRegistryTopics() {
+        assertDenied(WebSocketConfig.USER_DESTINATION_BROADCAST);
+        assertDenied(WebSocketConfig.USER_REGISTRY_BROADCAST);
+    }
+
+    @Test
+    void onlySendsToApplicationDestinations() {
+        Message<byte[]> send = frame(StompCommand.SEND, "/app/chat.sendMessage");
+        assertThat(interceptor.preSend(send, channel)).isSameAs(send);
+
+        for (String destination : new String[]{WebSocketConfig.USER_REGISTRY_BROADCAST, "/topic/public", "/queue/messages", null}) {
+            assertThatThrownBy(() -> interceptor.preSend(frame(StompCommand.SEND, destination), channel))
+                    .isInstanceOf(AccessDeniedException.class);
+        }
+    }
+
+    private void assertDenied(String destination) {
+        assertThatThrownBy(() -> interceptor.preSend(subscribe(destination), channel))
+                .isInstanceOf(AccessDeniedException.class);
+    }
+
+    private static Message<byte[]> subscribe(String destination) {
+        return frame(StompCommand.SUBSCRIBE, destination);
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setDestination(destination);
+        if (command == StompCommand.SUBSCRIBE) {
+            accessor.setSubscriptionId("sub-0");
+        }
+        accessor.setUser(new UsernamePasswordAuthenticationToken("alice", null));
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,156 @@
+package com.lmg.backend.search;
+
+import com.lmg.backend.chat.ChatMessageView;
+import com.lmg.backend.chat.ChatRooms;
+import com.lmg.backend.chat.MessageStore;
+import com.lmg.backend.chat.MessageType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageSearchIndexTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    private MessageStore messageStore;
+    private MessageSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        messageStore = mock(MessageStore.class);
+        when(messageStore.scan(anyLong(), anyInt())).thenReturn(List.of());
+        index = new MessageSearchIndex(messageStore, 8, 10, 50, 1000);
+        index.rebuild();
+    }
+
+    @Test
+    void matchesEveryTermNewestFirst() {
+        index.add(message(1, ChatRooms.PUBLIC, "alice", "Deploy the backend today"));
+        index.add(message(2, ChatRooms.PUBLIC, "bob", "backend is down"));
+        index.add(message(3, ChatRooms.PUBLIC, "alice", "Backend deploy done!"));
+
+        assertThat(ids(index.search("backend", room -> true, null, null, null, null, null))).containsExactly(3L, 2L, 1L);
+        assertThat(ids(index.search("DEPLOY backend", room -> true, null, null, null, null, null))).containsExactly(3L, 1L);
+        assertThat(ids(index.search("deploy frontend", room -> true, null, null, null, null, null))).isEmpty();
+    }
+
+    @Test
+    void filtersBySenderTimeAndRoom() {
+        index.add(message(1, ChatRooms.PUBLIC, "alice", "release notes"));
+        index.add(message(2, "team", "bob", "release plan"));
+        index.add(message(3, ChatRooms.PUBLIC, "bob", "release date"));
+
+        assertThat(ids(index.search("release", room -> true, "bob", null, null, null, null))).containsExactly(3L, 2L);
+        assertThat(ids(index.search("release", room -> true, "carol", null, null, null, null))).isEmpty();
+        assertThat(ids(index.search("release", room -> true, null, START.plusMinutes(2), START.plusMinutes(3), null, null)))
+                .containsExactly(2L);
+        assertThat(ids(index.search("release", ChatRooms.PUBLIC::equals, null, null, null, null, null))).containsExactly(3L, 1L);
+    }
+
+    @Test
+    void pagesWithCursor() {
+        for (long id = 1; id <= 5; id++) {
+            index.add(message(id, ChatRooms.PUBLIC, "alice", "status update " + id));
+        }
+
+        SearchPage first = index.search("status", room -> true, null, null, null, null, 2);
+        SearchPage second = index.search("status", room -> true, null, null, null, first.getNextCursor(), 2);
+        SearchPage third = index.search("status", room -> true, null, null, null, second.getNextCursor(), 2);
+
+        assertThat(ids(first)).containsExactly(5L, 4L);
+        assertThat(first.isHasMore()).isTrue();
+        assertThat(ids(second)).containsExactly(3L, 2L);
+        assertThat(ids(third)).containsExactly(1L);
+        assertThat(third.isHasMore()).isFalse();
+        assertThatThrownBy(() -> index.search("status", room -> true, null, null, null, "abc", 2))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> index.search("a ?", room -> true, null, null, null, null, 2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void dropsOldestDocumentsWhenFull() {
+        for (long id = 1; id <= 9; id++) {
+            index.add(message(id, ChatRooms.PUBLIC, "alice", id % 2 == 0 ? "even news" : "odd news"));
+        }
+
+        // The ninth message pushes out the oldest quarter of the eight kept
+        assertThat(index.getDocumentCount()).isEqualTo(7);
+        assertThat(ids(index.search("news", room -> true, null, null, null, null, null)))
+                .containsExactly(9L, 8L, 7L, 6L, 5L, 4L, 3L);
+        assertThat(ids(index.search("even", room -> true, null, null, null, null, null))).containsExactly(8L, 6L, 4L);
+    }
+
+    @Test
+    void forgetsSendersOnlyDroppedDocumentsUsed() {
+        index.add(message(1, "team", "carol", "old news"));
+        for (long id = 2; id <= 9; id++) {
+            index.add(message(id, ChatRooms.PUBLIC, "alice", "news " + id));
+        }
+
+        assertThat(ids(index.search("news", room -> true, "carol", null, null, null, null))).isEmpty();
+        assertThat(ids(index.search("news", room -> true, "alice", null, null, null, 2))).containsExactly(9L, 8L);
+        assertThat(ids(index.search("news", "team"::equals, null, null, null, null, null))).isEmpty();
+    }
+
+    @Test
+    void stopsAtTheCandidateBudgetAndResumesFromTheCursor() {
+        MessageSearchIndex bounded = new MessageSearchIndex(messageStore, 8, 10, 50, 3);
+        for (long id = 1; id <= 6; id++) {
+            bounded.add(message(id, id == 1 ? "team" : ChatRooms.PUBLIC, "alice", "news " + id));
+        }
+
+        SearchPage first = bounded.search("news", "team"::equals, null, null, null, null, null);
+        assertThat(first.getMessages()).isEmpty();
+        assertThat(first.isHasMore()).isTrue();
+        SearchPage second = bounded.search("news", "team"::equals, null, null, null, first.getNextCursor(), null);
+        assertThat(ids(second)).containsExactly(1L);
+        assertThat(second.isHasMore()).isFalse();
+    }
+
+    @Test
+    void rebuildsFromTheMessageStore() {
+        when(messageStore.scan(eq(0L), anyInt())).thenReturn(List.of(
+                message(1, ChatRooms.PUBLIC, "alice", "hello world"),
+                new ChatMessageView(2L, ChatRooms.PUBLIC, "bob", null, MessageType.JOIN, START)));
+
+        index.rebuild();
+
+        assertThat(index.getDocumentCount()).isEqualTo(1);
+        assertThat(ids(index.search("world", room -> true, null, null, null, null, null))).containsExactly(1L);
+    }
+
+    @Test
+    void rebuildOnlyReadsTheIndexedWindow() {
+        // max-documents is 8, anything before the latest 8 stored messages is never scanned
+        when(messageStore.idBeforeLatest(8)).thenReturn(92L);
+        when(messageStore.scan(eq(92L), anyInt())).thenReturn(List.of(message(93, ChatRooms.PUBLIC, "alice", "recent news")));
+        clearInvocations(messageStore);
+
+        index.rebuild();
+
+        verify(messageStore, never()).scan(eq(0L), anyInt());
+        assertThat(ids(index.search("news", room -> true, null, null, null, null, null))).containsExactly(93L);
+    }
+
+    private static List<Long> ids(SearchPage page) {
+        return page.getMessages().stream().map(ChatMessageView::getId).toList();
+    }
+
+    private static ChatMessageView message(long id, String room, String sender, String content) {
+        return new ChatMessageView(id, room, sender, content, MessageType.CHAT, START.plusMinutes(id));
+    }
+}
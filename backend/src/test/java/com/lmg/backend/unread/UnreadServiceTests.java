@@ -0,0 +1,144 @@
+package com.lmg.backend.unread;
+
+import com.lmg.backend.chat.ChatRooms;
+import com.lmg.backend.room.RoomMembershipService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UnreadServiceTests {
+
+    private final RoomSequenceRepository sequenceRepository = mock(RoomSequenceRepository.class);
+    private final ReadCursorRepository cursorRepository = mock(ReadCursorRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final RoomMembershipService membershipService = mock(RoomMembershipService.class);
+
+    private UnreadService unreadService;
+
+    @BeforeEach
+    void setUp() {
+        when(sequenceRepository.findAll()).thenReturn(List.of(new RoomSequence(ChatRooms.PUBLIC, 10)));
+        when(cursorRepository.findByUsername("alice")).thenReturn(List.of(new ReadCursor("alice", ChatRooms.PUBLIC, 7)));
+        when(membershipService.roomsOf(anyString())).thenReturn(Set.of());
+        when(membershipService.roomsOf("alice")).thenReturn(Set.of("team"));
+        unreadService = new UnreadService(sequenceRepository, cursorRepository, jdbcTemplate, membershipService,
+                new SimpleMeterRegistry(), 60_000, 2, 2);
+        unreadService.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        unreadService.shutdown();
+    }
+
+    @Test
+    void countsMessagesPastTheCursorButNotTheSendersOwn() {
+        unreadService.messageSent("team", "bob");
+        unreadService.messageSent("team", "bob");
+        unreadService.messageSent(ChatRooms.PUBLIC, "alice");
+
+        assertThat(unreadService.unreadCounts("alice")).containsExactly(new RoomUnread("team", 2, 2));
+        assertThat(unreadService.unreadCounts("bob")).containsExactly(new RoomUnread(ChatRooms.PUBLIC, 11, 11));
+    }
+
+    @Test
+    void directConversationsCountForBothParticipants() {
+        String direct = ChatRooms.direct("alice", "bob");
+        unreadService.messageSent(direct, "bob");
+
+        assertThat(unreadService.unreadCounts("alice")).contains(new RoomUnread(direct, 1, 1));
+        assertThat(unreadService.unreadCounts("bob")).doesNotContain(new RoomUnread(direct, 1, 1));
+    }
+
+    @Test
+    void markReadOnlyMovesTheCursorForward() {
+        assertThat(unreadService.markRead("alice", ChatRooms.PUBLIC, 9L)).isEqualTo(new RoomUnread(ChatRooms.PUBLIC, 1, 10));
+        assertThat(unreadService.markRead("alice", ChatRooms.PUBLIC, 3L)).isEqualTo(new RoomUnread(ChatRooms.PUBLIC, 1, 10));
+        assertThat(unreadService.markRead("alice", ChatRooms.PUBLIC, 99L)).isEqualTo(new RoomUnread(ChatRooms.PUBLIC, 0, 10));
+        assertThat(unreadService.unreadCounts("alice")).isEmpty();
+    }
+
+    @Test
+    void flushWritesChangedRowsInBatches() {
+        for (String room : List.of("a", "b", "c")) {
+            unreadService.messageSent(room, null);
+        }
+        unreadService.markRead("alice", ChatRooms.PUBLIC, null);
+        assertThat(unreadService.getPendingCount()).isEqualTo(4);
+
+        unreadService.flush();
+
+        assertThat(unreadService.getPendingCount()).isZero();
+        // Three room sequence increments in batches of two, then one cursor
+        verify(jdbcTemplate, times(2)).batchUpdate(eq(UnreadService.INCREMENT_SEQUENCE_SQL),
+                any(List.class), anyInt(), any());
+        verify(jdbcTemplate).batchUpdate(eq(UnreadService.ADVANCE_CURSOR_SQL),
+                any(List.class), anyInt(), any());
+    }
+
+    @Test
+    void takesOtherNodesCountsFromTheStoredSequence() {
+        unreadService.messageSent("team", "bob");
+        // Another node counted four more "team" messages meanwhile
+        when(sequenceRepository.findAllById(List.of("team"))).thenReturn(List.of(new RoomSequence("team", 5)));
+
+        unreadService.flush();
+
+        assertThat(unreadService.unreadCounts("alice")).contains(new RoomUnread("team", 5, 5));
+    }
+
+    @Test
+    void evictsCursorsOfIdleUsersAndKeepsUnwrittenOnes() {
+        unreadService.markRead("alice", ChatRooms.PUBLIC, null);
+        unreadService.markRead("bob", ChatRooms.PUBLIC, null);
+        when(jdbcTemplate.batchUpdate(eq(UnreadService.ADVANCE_CURSOR_SQL), any(List.class), anyInt(), any()))
+                .thenThrow(new QueryTimeoutException("down"));
+        unreadService.markRead("carol", ChatRooms.PUBLIC, null);
+
+        unreadService.flush();
+
+        // alice was evicted and reloads her stored cursor, which is behind the one still waiting to be written
+        assertThat(unreadService.unreadCounts("alice")).isEmpty();
+        assertThat(unreadService.getPendingCount()).isEqualTo(3);
+    }
+
+    @Test
+    void recordsAnUnloadedSendersCursorWithoutReadingIt() {
+        unreadService.messageSent(ChatRooms.PUBLIC, "alice");
+        verify(cursorRepository, never()).findByUsername(anyString());
+        assertThat(unreadService.getPendingCount()).isEqualTo(2);
+
+        // The stored cursor is at 7, the pending one at the message alice just sent
+        assertThat(unreadService.unreadCounts("alice")).isEmpty();
+        verify(cursorRepository).findByUsername("alice");
+    }
+
+    @Test
+    void writesPendingCursorsOfUsersThatWereNeverLoaded() {
+        unreadService.messageSent("team", "bob");
+        unreadService.messageSent("team", "bob");
+
+        unreadService.flush();
+
+        assertThat(unreadService.getPendingCount()).isZero();
+        verify(jdbcTemplate).batchUpdate(eq(UnreadService.ADVANCE_CURSOR_SQL), any(List.class), anyInt(), any());
+        verify(cursorRepository, never()).findByUsername(anyString());
+    }
+}
@@ -0,0 +1,87 @@
+package com.lmg.backend.user;
+
+import com.lmg.backend.config.LoginRateLimiter;
+import com.lmg.backend.config.PasswordHashingService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:auth-controller-tests",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class AuthControllerTests {
+
+    @Autowired
+    private AuthController authController;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        register("taken", "taken@example.com", "10.0.0.1");
+    }
+
+    @Test
+    void turnsAwayADuplicateWithOneQuery() {
+        statistics.clear();
+        ResponseEntity<String> sameUsername = register("taken", "other@example.com", "10.0.0.2");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        ResponseEntity<String> sameEmail = register("other", "taken@example.com", "10.0.0.3");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        assertThat(sameUsername.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(sameUsername.getBody()).isEqualTo("UserName Already Exists");
+        assertThat(sameEmail.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(sameEmail.getBody()).isEqualTo("Email Already Exists");
+    }
+
+    @Test
+    void answersServiceUnavailableWhenTheHashingQueueIsFull() {
+        PasswordHashingService saturated = mock(PasswordHashingService.class);
+        when(saturated.encode(anyString())).thenThrow(new RejectedExecutionException("queue full"));
+        // The mocked rate limiter lets everything through and the mocked repository finds no duplicate
+        AuthController controller = new AuthController(saturated, mock(LoginRateLimiter.class), mock(UserRepository.class),
+                null, null, null);
+        RegisterRequest request = new RegisterRequest();
+        request.setUsername("busy");
+        request.setEmail("busy@example.com");
+        request.setPassword("secret123");
+
+        ResponseEntity<String> response = controller.register(request, new MockHttpServletRequest()).join();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+    }
+
+    private ResponseEntity<String> register(String username, String email, String remoteAddr) {
+        RegisterRequest request = new RegisterRequest();
+        request.setUsername(username);
+        request.setEmail(email);
+        request.setPassword("secret123");
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setRemoteAddr(remoteAddr);
+        return authController.register(request, httpRequest).join();
+    }
+}
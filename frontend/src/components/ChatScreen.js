@@ -4,15 +4,29 @@ import {Client} from '@stomp/stompjs';
 import './ChatScreen.css';
 import {useAuth} from '../context/AuthContext';
 
+const API_URL = 'http://localhost:8080';
+
+// History cursor of a message, the "{epochMicros}-{id}" form the server hands out as nextCursor.
+// sentAt is UTC without an offset and has microseconds, which Date would truncate.
+const cursorOf = (message) => {
+  const [seconds, fraction = ''] = message.sentAt.split('.');
+  const micros = BigInt(Date.parse(seconds + 'Z')) * 1000n + BigInt((fraction + '000000').slice(0, 6));
+  return `${micros}-${message.id}`;
+};
+
 const ChatScreen = ({ username, onDisconnect }) => {
-  const { logout, user } = useAuth();
+  const { logout, user, token } = useAuth();
   const [messages, setMessages] = useState([]);
   const [isConnected, setIsConnected] = useState(false);
   const [isConnecting, setIsConnecting] = useState(false);
   const [messageInput, setMessageInput] = useState('');
+  const [onlineUsers, setOnlineUsers] = useState([]);
 
   const stompClientRef = useRef(null);
   const messagesEndRef = useRef(null);
+  // IDs shown so far and the cursor of the newest one, for catching up after a resync
+  const seenIdsRef = useRef(new Set());
+  const lastCursorRef = useRef(null);
 
   // Auto-scroll to bottom when new messages arrive
   const scrollToBottom = () => {
@@ -35,16 +49,143 @@ const ChatScreen = ({ username, onDisconnect }) => {
     console.log('Initiating WebSocket connection for user:', username);
     setIsConnecting(true);
 
+    const appendMessages = (received) => {
+      const fresh = received.filter(message => {
+        if (message.id == null) return true;
+        if (seenIdsRef.current.has(message.id)) return false;
+        seenIdsRef.current.add(message.id);
+        lastCursorRef.current = cursorOf(message);
+        return true;
+      });
+
+      fresh.forEach(message => {
+        if (message.type === 'JOIN') {
+          message.content = message.sender + ' joined!';
+        } else if (message.type === 'LEAVE') {
+          message.content = message.sender + ' left!';
+        }
+      });
+
+      setMessages(prevMessages => [...prevMessages, ...fresh]);
+    };
+
+    // The server dropped messages we were too slow to take and sent a resync marker instead:
+    // reload everything after the last message we have
+    let resyncing = false;
+    const resync = async () => {
+      if (resyncing) return;
+      resyncing = true;
+      try {
+        let after = lastCursorRef.current;
+        let hasMore = true;
+        while (hasMore) {
+          const params = new URLSearchParams({ room: 'public', limit: '200' });
+          if (after) params.set('after', after);
+          const response = await fetch(`${API_URL}/api/auth/messages?${params}`, {
+            headers: { Authorization: `Bearer ${token}` }
+          });
+          if (!response.ok) return;
+          const page = await response.json();
+          appendMessages(page.messages);
+          // Without a cursor the page is the latest one, and its hasMore points backwards
+          hasMore = after != null && page.hasMore && page.nextCursor != null;
+          after = page.nextCursor;
+        }
+      } catch (error) {
+        console.error('Error reloading messages after resync:', error);
+      } finally {
+        resyncing = false;
+      }
+    };
+
     const onMessageReceived = (payload) => {
-      const message = JSON.parse(payload.body);
+      if (payload.headers['x-resync'] === 'true') {
+        resync();
+        return;
+      }
+      // With x-coalesce the server may send several messages in one frame as a JSON array
+      const body = JSON.parse(payload.body);
+      appendMessages(Array.isArray(body) ? body : [body]);
+    };
 
-      if (message.type === 'JOIN') {
-        message.content = message.sender + ' joined!';
-      } else if (message.type === 'LEAVE') {
-        message.content = message.sender + ' left!';
+    // Presence arrives as batched deltas, each from one server node. Every node's users are kept
+    // apart and the union is shown, so a user with tabs on two nodes stays online until both say
+    // otherwise. Until the roster is loaded the deltas are held back, then only the ones newer than
+    // what we hold for their node are applied. Behind a relay nodes also send periodic snapshots of
+    // their full list; a node that has not been heard from for a few of those intervals is dropped
+    let presenceNodes = new Map();
+    let snapshotIntervalMs = 0;
+    let pendingDeltas = [];
+    const onlineOf = (nodes) => {
+      const online = new Set();
+      nodes.forEach(state => state.users.forEach(user => online.add(user)));
+      return online;
+    };
+    const showPresence = () => {
+      const now = Date.now();
+      if (snapshotIntervalMs > 0) {
+        presenceNodes.forEach((state, node) => {
+          if (now - state.seenAt > 3 * snapshotIntervalMs) presenceNodes.delete(node);
+        });
       }
+      const after = onlineOf(presenceNodes);
+      setOnlineUsers([...after]);
+      return after;
+    };
+    const applyPresenceDelta = (delta) => {
+      const state = presenceNodes.get(delta.node) || { version: 0, users: new Set(), seenAt: 0 };
+      state.seenAt = Date.now();
+      presenceNodes.set(delta.node, state);
+      if (delta.snapshot ? delta.version < state.version : delta.version <= state.version) return;
+      state.version = delta.version;
 
-      setMessages(prevMessages => [...prevMessages, message]);
+      if (delta.snapshot) {
+        state.users = new Set(delta.online);
+        // A snapshot only fills in what we missed, it does not announce anyone
+        showPresence();
+        return;
+      }
+      const before = onlineOf(presenceNodes);
+      delta.offline.forEach(user => state.users.delete(user));
+      delta.online.forEach(user => state.users.add(user));
+      const after = showPresence();
+      setMessages(prevMessages => [
+        ...prevMessages,
+        ...delta.online.filter(sender => !before.has(sender) && after.has(sender))
+          .map(sender => ({ type: 'JOIN', sender, content: sender + ' joined!' })),
+        ...delta.offline.filter(sender => before.has(sender) && !after.has(sender))
+          .map(sender => ({ type: 'LEAVE', sender, content: sender + ' left!' })),
+      ]);
+    };
+
+    const onPresenceDelta = (payload) => {
+      const delta = JSON.parse(payload.body);
+      if (pendingDeltas) {
+        pendingDeltas.push(delta);
+      } else {
+        applyPresenceDelta(delta);
+      }
+    };
+
+    const loadRoster = async () => {
+      try {
+        const response = await fetch(`${API_URL}/api/presence`, {
+          headers: { Authorization: `Bearer ${token}` }
+        });
+        if (response.ok) {
+          const roster = await response.json();
+          snapshotIntervalMs = roster.snapshotIntervalMs;
+          presenceNodes.set(roster.node, { version: roster.version, users: new Set(roster.online), seenAt: Date.now() });
+          showPresence();
+        }
+      } catch (error) {
+        console.error('Error loading presence roster:', error);
+      } finally {
+        // Without a roster the buffered deltas are still the best we have
+        const buffered = pendingDeltas;
+        pendingDeltas = null;
+        buffered.forEach(applyPresenceDelta);
+      }
     };
 
     const onConnected = () => {
@@ -54,6 +195,10 @@ const ChatScreen = ({ username, onDisconnect }) => {
 
       if (stompClientRef.current) {
         stompClientRef.current.subscribe('/topic/public', onMessageReceived);
+        presenceNodes = new Map();
+        pendingDeltas = [];
+        stompClientRef.current.subscribe('/topic/presence', onPresenceDelta);
+        loadRoster();
 
         stompClientRef.current.publish({
           destination: '/app/chat.addUser',
@@ -73,9 +218,12 @@ const ChatScreen = ({ username, onDisconnect }) => {
       });
     };
 
-    const socket = new SockJS('http://localhost:8080/ws');
+    const socket = new SockJS(`${API_URL}/ws`);
     const client = new Client({
       webSocketFactory: () => socket,
+      // The server verifies this once on CONNECT and stamps our messages with the verified username
+      // x-coalesce: let the server batch bursts of messages into one frame
+      connectHeaders: { Authorization: `Bearer ${token}`, 'x-coalesce': 'true' },
       onConnect: onConnected,
       onStompError: onError,
       onWebSocketError: onError,
@@ -89,17 +237,7 @@ const ChatScreen = ({ username, onDisconnect }) => {
 
     return () => {
       if (stompClientRef.current) {
-        // Send LEAVE message before disconnecting
-        if (isConnected) {
-          try {
-            stompClientRef.current.publish({
-              destination: '/app/chat.sendMessage',
-              body: JSON.stringify({ sender: username, type: 'LEAVE' })
-            });
-          } catch (error) {
-            console.error('Error sending LEAVE message:', error);
-          }
-        }
+        // The server announces the LEAVE through presence once the session closes
         stompClientRef.current.deactivate();
         stompClientRef.current = null;
       }
@@ -126,16 +264,8 @@ const ChatScreen = ({ username, onDisconnect }) => {
   };
 
   const handleLogout = () => {
-    // Send LEAVE message
+    // Closing the connection is enough, presence announces the LEAVE
     if (stompClientRef.current && isConnected) {
-      try {
-        stompClientRef.current.publish({
-          destination: '/app/chat.sendMessage',
-          body: JSON.stringify({ sender: username, type: 'LEAVE' })
-        });
-      } catch (error) {
-        console.error('Error sending LEAVE message:', error);
-      }
       stompClientRef.current.deactivate();
     }
 
@@ -155,6 +285,9 @@ const ChatScreen = ({ username, onDisconnect }) => {
                 {isConnected && '🟢 Connected'}
                 {!isConnected && !isConnecting && '🔴 Disconnected'}
             </span>
+              {isConnected && (
+                  <span className="connection-status">{onlineUsers.length} online</span>
+              )}
             </div>
             <div className="user-info">
               <span className="username">👤 {user?.username || username}</span>